@@ -0,0 +1,51 @@
+// Workspace of the net for up to batchN inputs: inputs, outputs, sigmas and gradients of each layer
+// weights stay in the net, so each thread uses its own activations with the same net
+package space.aqoleg.neurogame;
+
+class Activations {
+    final int batchN;
+    final float[] input; // [sample * map[0] + in]
+    final float[][] outputs; // [layerN][sample * outputsN + out], outputs of the last layer are the answers
+    final float[][] sigmas; // [layerN][sample * outputsN + out]
+    private final int[] map;
+    private float[][] gradients; // [layerN][in * outputsN + out], null till the first learning
+
+    // map - map of the net, batchN > 0
+    Activations(int[] map, int batchN) {
+        this.batchN = batchN;
+        this.map = map;
+        input = new float[batchN * map[0]];
+        outputs = new float[map.length][];
+        sigmas = new float[map.length][];
+        for (int layerN = 0; layerN < map.length; layerN++) {
+            outputs[layerN] = new float[batchN * getOutputsN(layerN)];
+            sigmas[layerN] = new float[batchN * getOutputsN(layerN)];
+        }
+    }
+
+    // Return sums of dError/dWeight of each layer
+    float[][] getGradients() {
+        if (gradients == null) {
+            gradients = new float[map.length][];
+            for (int layerN = 0; layerN < map.length; layerN++) {
+                gradients[layerN] = new float[map[layerN] * getOutputsN(layerN)];
+            }
+        }
+        return gradients;
+    }
+
+    // Add gradients of the other activations of the same net to these gradients
+    void addGradients(Activations activations) {
+        float[][] gradients = getGradients();
+        float[][] otherGradients = activations.getGradients();
+        for (int layerN = 0; layerN < gradients.length; layerN++) {
+            for (int n = 0; n < gradients[layerN].length; n++) {
+                gradients[layerN][n] += otherGradients[layerN][n];
+            }
+        }
+    }
+
+    private int getOutputsN(int layerN) {
+        return layerN == map.length - 1 ? 1 : map[layerN + 1];
+    }
+}
@@ -0,0 +1,185 @@
+// Bounded cache of the answers of the net for the fields after the move with the score
+// the least recently used answer is replaced when the cache is full
+// answers are valid for one version of the net, see Net.getVersion, other version clears the cache
+// one thread uses the cache, caches from getEmpty() count hits and misses together and can be used by other threads
+package space.aqoleg.neurogame;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+class AnswerCache {
+    private final int capacity;
+    private final long[] fields; // [entryN]
+    private final int[] scores; // [entryN]
+    private final float[] answers; // [entryN]
+    private final int[] chains; // [entryN] next entryN of the same bucket, -1 is the end
+    private final int[] older; // [entryN] previous entryN in the order of use, -1 is the end
+    private final int[] newer; // [entryN] next entryN in the order of use, -1 is the end
+    private final int[] buckets; // [bucket] first entryN, -1 is empty
+    private final int bucketBits;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private int size;
+    private int oldest = -1;
+    private int newest = -1;
+    private long version;
+
+    // 0 < capacity <= 2^28
+    AnswerCache(int capacity) throws ExceptionInInitializerError {
+        this(capacity, new LongAdder(), new LongAdder());
+    }
+
+    private AnswerCache(int capacity, LongAdder hits, LongAdder misses) throws ExceptionInInitializerError {
+        if (capacity < 1 || capacity > 1 << 28) {
+            throw new ExceptionInInitializerError("capacity < 1 or capacity > 2^28");
+        }
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        fields = new long[capacity];
+        scores = new int[capacity];
+        answers = new float[capacity];
+        chains = new int[capacity];
+        older = new int[capacity];
+        newer = new int[capacity];
+        bucketBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        buckets = new int[1 << bucketBits];
+        Arrays.fill(buckets, -1);
+    }
+
+    // Return empty cache of the same capacity for the other thread, hits and misses are counted together
+    AnswerCache getEmpty() {
+        return new AnswerCache(capacity, hits, misses);
+    }
+
+    // Return answer for the field after the move with this score of this version of the net,
+    // NaN if there is no answer
+    float get(long nextField, int score, long version) {
+        setVersion(version);
+        int entryN = find(nextField, score);
+        if (entryN < 0) {
+            misses.increment();
+            return Float.NaN;
+        }
+        hits.increment();
+        use(entryN);
+        return answers[entryN];
+    }
+
+    // Save answer of this version of the net
+    void put(long nextField, int score, long version, float answer) {
+        setVersion(version);
+        int entryN = find(nextField, score);
+        if (entryN < 0) {
+            if (size < capacity) {
+                entryN = size++;
+            } else {
+                entryN = oldest;
+                removeFromBucket(entryN);
+                removeFromOrder(entryN);
+            }
+            fields[entryN] = nextField;
+            scores[entryN] = score;
+            int bucket = getBucket(nextField, score);
+            chains[entryN] = buckets[bucket];
+            buckets[bucket] = entryN;
+            addNewest(entryN);
+        } else {
+            use(entryN);
+        }
+        answers[entryN] = answer;
+    }
+
+    // Remove all answers
+    void clear() {
+        Arrays.fill(buckets, -1);
+        size = 0;
+        oldest = -1;
+        newest = -1;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    // Return share of the hits of all requests, 0 if there are no requests
+    float getHitRate() {
+        long hits = getHits();
+        long all = hits + getMisses();
+        return all == 0 ? 0 : (float) hits / all;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses, hit rate %.3f", getHits(), getMisses(), getHitRate());
+    }
+
+    private void setVersion(long version) {
+        if (version != this.version) {
+            clear();
+            this.version = version;
+        }
+    }
+
+    // Return entryN of the field with the score or -1
+    private int find(long nextField, int score) {
+        int entryN = buckets[getBucket(nextField, score)];
+        while (entryN >= 0 && (fields[entryN] != nextField || scores[entryN] != score)) {
+            entryN = chains[entryN];
+        }
+        return entryN;
+    }
+
+    // Make entry the newest
+    private void use(int entryN) {
+        if (entryN != newest) {
+            removeFromOrder(entryN);
+            addNewest(entryN);
+        }
+    }
+
+    private void addNewest(int entryN) {
+        older[entryN] = newest;
+        newer[entryN] = -1;
+        if (newest >= 0) {
+            newer[newest] = entryN;
+        } else {
+            oldest = entryN;
+        }
+        newest = entryN;
+    }
+
+    private void removeFromOrder(int entryN) {
+        if (older[entryN] >= 0) {
+            newer[older[entryN]] = newer[entryN];
+        } else {
+            oldest = newer[entryN];
+        }
+        if (newer[entryN] >= 0) {
+            older[newer[entryN]] = older[entryN];
+        } else {
+            newest = older[entryN];
+        }
+    }
+
+    private void removeFromBucket(int entryN) {
+        int bucket = getBucket(fields[entryN], scores[entryN]);
+        if (buckets[bucket] == entryN) {
+            buckets[bucket] = chains[entryN];
+            return;
+        }
+        int previousN = buckets[bucket];
+        while (chains[previousN] != entryN) {
+            previousN = chains[previousN];
+        }
+        chains[previousN] = chains[entryN];
+    }
+
+    private int getBucket(long nextField, int score) {
+        return (int) (((nextField ^ score) * 0x9E3779B97F4A7C15L) >>> (64 - bucketBits));
+    }
+}
@@ -0,0 +1,296 @@
+// Game field packed into one long, 4 bits for each of 16 cells
+// cell values represent as 2^n, 0 <= n <= 15
+// cellN takes bits from 4 * cellN to 4 * cellN + 3, so each row of the field is 16 bits and cell 0 is the lowest
+// moves and scores are made with 65536-entry row tables, columns are moved as rows of the transposed board
+package space.aqoleg.neurogame;
+
+import java.util.random.RandomGenerator;
+
+class Board {
+    static final int MAX_CELL = 15;
+    private static final char[] LEFT_ROWS = new char[65536]; // [row] row after squeezing to the linePos 0
+    private static final char[] RIGHT_ROWS = new char[65536]; // [row] row after squeezing to the linePos 3
+    // additions are the same for both directions of the line, as equal cells are paired in the same way
+    private static final byte[] ROW_SCORES = new byte[65536]; // [row] sum of n of added 2^n cells
+    private static final byte[] ROW_ADDED_CELLS = new byte[65536]; // [row] count of additions
+    private static final int[] ROW_POINTS = new int[65536]; // [row] sum of 2^(n + 1) of added 2^n cells
+    private static final byte[] ROW_MOVES = new byte[65536]; // [row] bits 1 << LEFT, 1 << RIGHT of possible moves
+    private static final byte[] COLUMN_MOVES = new byte[65536]; // [row of transposed] bits 1 << UP, 1 << DOWN
+    private static final int[] EXTRA_SCORES = {0, 0, 2, 4, 8, 16, 32, 64, 128}; // [addedCells] 2^(addedCells - 1)
+
+    static {
+        for (int row = 0; row < 65536; row++) {
+            LEFT_ROWS[row] = (char) squeezeRow(row);
+            RIGHT_ROWS[row] = (char) reverseRow(squeezeRow(reverseRow(row)));
+            scoreRow(row);
+            if (LEFT_ROWS[row] != row) {
+                ROW_MOVES[row] |= 1 << Field.LEFT;
+                COLUMN_MOVES[row] |= 1 << Field.UP;
+            }
+            if (RIGHT_ROWS[row] != row) {
+                ROW_MOVES[row] |= 1 << Field.RIGHT;
+                COLUMN_MOVES[row] |= 1 << Field.DOWN;
+            }
+        }
+    }
+
+    private Board() {
+    }
+
+    static int getCell(long board, int cellN) {
+        return (int) (board >>> (cellN << 2)) & 0xF;
+    }
+
+    // Return board with this cell, 0 <= cell <= MAX_CELL
+    static long setCell(long board, int cellN, int cell) {
+        int shift = cellN << 2;
+        return (board & ~(0xFL << shift)) | ((long) cell << shift);
+    }
+
+    static int getRow(long board, int rowN) {
+        return (int) (board >>> (rowN << 4)) & 0xFFFF;
+    }
+
+    static int countEmpty(long board) {
+        int countEmpty = 0;
+        for (int cellN = 0; cellN < 16; cellN++) {
+            if ((board & 0xF) == 0) {
+                countEmpty++;
+            }
+            board >>>= 4;
+        }
+        return countEmpty;
+    }
+
+    static int getMaxCell(long board) {
+        int max = 0;
+        for (int cellN = 0; cellN < 16; cellN++) {
+            max = Math.max(max, (int) board & 0xF);
+            board >>>= 4;
+        }
+        return max;
+    }
+
+    // Return sum of 2^n of all cells
+    static int getSum(long board) {
+        int sum = 0;
+        for (int cellN = 0; cellN < 16; cellN++) {
+            int cell = (int) board & 0xF;
+            if (cell != 0) {
+                sum += 1 << cell;
+            }
+            board >>>= 4;
+        }
+        return sum;
+    }
+
+    // Return bits (1 << direction) of the possible moves, 0 if there are no possible moves
+    static int getPossibleMoves(long board) {
+        long transposed = transpose(board);
+        return ROW_MOVES[(int) board & 0xFFFF] | ROW_MOVES[(int) (board >>> 16) & 0xFFFF]
+                | ROW_MOVES[(int) (board >>> 32) & 0xFFFF] | ROW_MOVES[(int) (board >>> 48)]
+                | COLUMN_MOVES[(int) transposed & 0xFFFF] | COLUMN_MOVES[(int) (transposed >>> 16) & 0xFFFF]
+                | COLUMN_MOVES[(int) (transposed >>> 32) & 0xFFFF] | COLUMN_MOVES[(int) (transposed >>> 48)];
+    }
+
+    // Return board with one random empty cell filled with 2 (90% odd) or 4 (10% odd), the same board if it is full
+    static long playComputer(long board, RandomGenerator random) {
+        int countEmpty = countEmpty(board);
+        if (countEmpty == 0) {
+            return board;
+        }
+        // Get random position of empty cell to be filled
+        int emptyPosToFill = random.nextInt(countEmpty);
+        // Find cell and fill it
+        int currentEmptyPos = 0;
+        for (int cellN = 0; cellN < 16; cellN++) {
+            if (getCell(board, cellN) == 0) {
+                if (currentEmptyPos == emptyPosToFill) {
+                    return setCell(board, cellN, random.nextInt(10) == 0 ? 2 : 1);
+                }
+                currentEmptyPos++;
+            }
+        }
+        return board;
+    }
+
+    // Fill nextBoards and scores for each direction from nextBoards[offset] and scores[offset]
+    // scores are Field scores, -2 if there is no move
+    // return true if there are no possible moves
+    static boolean fillNextMoves(long board, long[] nextBoards, int[] scores, int offset) {
+        boolean loose = true;
+        // additions are the same for both directions of the line
+        int rowsScore = getRowsScore(board);
+        int columnsScore = getRowsScore(transpose(board));
+        // Do for each direction
+        for (int direction = 0; direction < 4; direction++) {
+            long nextBoard = move(board, direction);
+            nextBoards[offset + direction] = nextBoard;
+            int score;
+            // if nothing changes this is impossible move, else no loose yet
+            if (nextBoard == board) {
+                score = -2;
+            } else {
+                loose = false;
+                score = direction == Field.LEFT || direction == Field.RIGHT ? rowsScore : columnsScore;
+                score += getNextScores(nextBoard); // add scores from next moves
+            }
+            scores[offset + direction] = score;
+        }
+        return loose;
+    }
+
+    // Return board after move in this direction, the same board if this move is impossible
+    static long move(long board, int direction) {
+        switch (direction) {
+            case Field.DOWN:
+                return transpose(moveRows(transpose(board), RIGHT_ROWS));
+            case Field.LEFT:
+                return moveRows(board, LEFT_ROWS);
+            case Field.RIGHT:
+                return moveRows(board, RIGHT_ROWS);
+            case Field.UP:
+                return transpose(moveRows(transpose(board), LEFT_ROWS));
+            default:
+                return board;
+        }
+    }
+
+    // Return sum of n of the added 2^n cells after squeezing of each row,
+    // with extra scores if more then one addition
+    // scores of the columns are the scores of the rows of the transposed board
+    static int getRowsScore(long board) {
+        int row0 = (int) board & 0xFFFF;
+        int row1 = (int) (board >>> 16) & 0xFFFF;
+        int row2 = (int) (board >>> 32) & 0xFFFF;
+        int row3 = (int) (board >>> 48);
+        int addedCells = ROW_ADDED_CELLS[row0] + ROW_ADDED_CELLS[row1] + ROW_ADDED_CELLS[row2] + ROW_ADDED_CELLS[row3];
+        return ROW_SCORES[row0] + ROW_SCORES[row1] + ROW_SCORES[row2] + ROW_SCORES[row3] + EXTRA_SCORES[addedCells];
+    }
+
+    // Return game points of the move in this direction, sum of 2^(n + 1) of added 2^n cells
+    static int getPoints(long board, int direction) {
+        if (direction == Field.UP || direction == Field.DOWN) {
+            board = transpose(board);
+        }
+        return ROW_POINTS[(int) board & 0xFFFF] + ROW_POINTS[(int) (board >>> 16) & 0xFFFF]
+                + ROW_POINTS[(int) (board >>> 32) & 0xFFFF] + ROW_POINTS[(int) (board >>> 48)];
+    }
+
+    // Return average scores from all possible moves
+    static int getNextScores(long board) {
+        return (getRowsScore(board) + getRowsScore(transpose(board))) / 2;
+    }
+
+    // Return Field scores of the possible move from board to nextBoard in this direction
+    static int getMoveScore(long board, int direction, long nextBoard) {
+        if (direction == Field.LEFT || direction == Field.RIGHT) {
+            return getRowsScore(board) + getNextScores(nextBoard);
+        }
+        return getRowsScore(transpose(board)) + getNextScores(nextBoard);
+    }
+
+    // Swap rows and columns, cell (row, column) goes to (column, row)
+    static long transpose(long board) {
+        // swap cells in 2x2 blocks
+        long a1 = board & 0xF0F00F0FF0F00F0FL; // cells on the diagonals of the blocks stay
+        long a2 = board & 0x0000F0F00000F0F0L;
+        long a3 = board & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        // swap 2x2 blocks
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    // Reverse cells in each row, cell (row, column) goes to (row, 3 - column)
+    static long mirror(long board) {
+        return ((board & 0x000F000F000F000FL) << 12) | ((board & 0x00F000F000F000F0L) << 4)
+                | ((board >>> 4) & 0x00F000F000F000F0L) | ((board >>> 12) & 0x000F000F000F000FL);
+    }
+
+    // Reverse rows, cell (row, column) goes to (3 - row, column)
+    static long flip(long board) {
+        return (board << 48) | ((board << 16) & 0x0000FFFF00000000L)
+                | ((board >>> 16) & 0x00000000FFFF0000L) | (board >>> 48);
+    }
+
+    // Return the min of 8 symmetric boards (rotations and reflections), it is the same for all of them
+    static long getCanonical(long board) {
+        long flipped = flip(board);
+        long min = Math.min(Math.min(board, mirror(board)), Math.min(flipped, mirror(flipped)));
+        long transposed = transpose(board);
+        flipped = flip(transposed);
+        min = Math.min(min, Math.min(transposed, mirror(transposed)));
+        return Math.min(min, Math.min(flipped, mirror(flipped)));
+    }
+
+    private static long moveRows(long board, char[] rows) {
+        return (long) rows[(int) board & 0xFFFF]
+                | (long) rows[(int) (board >>> 16) & 0xFFFF] << 16
+                | (long) rows[(int) (board >>> 32) & 0xFFFF] << 32
+                | (long) rows[(int) (board >>> 48) & 0xFFFF] << 48;
+    }
+
+    // Squeeze row to the linePos 0, cells with MAX_CELL are not added
+    private static int squeezeRow(int row) {
+        int newRow = 0;
+        int newLinePos = 0;
+        int bufferCell = 0;
+        for (int linePos = 0; linePos < 4; linePos++) {
+            int cell = (row >>> (linePos << 2)) & 0xF;
+            if (cell != 0) {
+                // do for non-empty cells
+                if (bufferCell == 0) {
+                    // buffer is empty, put the cell to the buffer
+                    bufferCell = cell;
+                } else if (bufferCell != cell || cell == MAX_CELL) {
+                    // buffer is not empty, put the cell from buffer to the newRow, fill buffer with new cell
+                    newRow |= bufferCell << (newLinePos++ << 2);
+                    bufferCell = cell;
+                } else {
+                    // buffer is not empty and the same as cell, put sum to the newRow, clear buffer
+                    newRow |= (cell + 1) << (newLinePos++ << 2); // 2^n + 2^n = 2^(n + 1)
+                    bufferCell = 0;
+                }
+            }
+        }
+        // if buffer is not empty, put it into newRow
+        if (bufferCell != 0) {
+            newRow |= bufferCell << (newLinePos << 2);
+        }
+        return newRow;
+    }
+
+    // Fill ROW_SCORES, ROW_ADDED_CELLS and ROW_POINTS
+    private static void scoreRow(int row) {
+        int addedCells = 0;
+        int score = 0;
+        int points = 0;
+        int bufferCell = 0;
+        for (int linePos = 0; linePos < 4; linePos++) {
+            int cell = (row >>> (linePos << 2)) & 0xF;
+            if (cell != 0) {
+                // do for non-empty cells
+                if (bufferCell != 0 && bufferCell == cell && cell != MAX_CELL) {
+                    // buffer is not empty and the same as cell, get scores, clear buffer
+                    addedCells++;
+                    score += cell;
+                    points += 2 << cell;
+                    bufferCell = 0;
+                } else {
+                    // buffer is empty or different, fill buffer with new cell
+                    bufferCell = cell;
+                }
+            }
+        }
+        ROW_SCORES[row] = (byte) score;
+        ROW_ADDED_CELLS[row] = (byte) addedCells;
+        ROW_POINTS[row] = points;
+    }
+
+    private static int reverseRow(int row) {
+        return ((row & 0xF) << 12) | ((row & 0xF0) << 4) | ((row >>> 4) & 0xF0) | (row >>> 12);
+    }
+}
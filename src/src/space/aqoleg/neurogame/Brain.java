@@ -2,19 +2,88 @@
 package space.aqoleg.neurogame;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
 
-class Brain {
-    private static final int MAX_INPUTS = 1000;
+class Brain implements Policy, Evaluator {
+    private static final int CAPACITY = 1 << 20; // recorded moves of the default replay buffer
+    private static final int SLICE_SIZE = 16; // inputs of one task of the trainer
+    private static final int CHUNK = 1 << 16; // moves of the log in the memory at once, also the window of the shuffle
     private final Field field;
     private final Net net;
-    private final float[][][] inputs = new float[MAX_INPUTS][4][17]; // [inputsN][direction]
-    private final int[] answers = new int[MAX_INPUTS];
+    private final QuantizedNet quantizedNet; // answers instead of the net if not null
+    private final ReplayBuffer moves; // recorded moves, they are kept after learning
+    private final Encoder encoder; // input of the net for perceive, evaluate and learning
+    private PositionLog log; // all moves on the disk, null if not used
+    private AnswerCache cache; // answers for the fields after the move, null if not used
+    private final long[] nextFields = new long[4]; // [direction] of the perceived field
+    private final int[] scores = new int[4]; // [direction] of the perceived field
+    private final float[][][] inputs = new float[5][][]; // [missedN][n] inputs of the directions missed in the cache
+    private final int[] missedDirections = new int[4]; // [n] direction of inputs[missedN][n]
+    private final float[] missedOutputs = new float[4]; // [n] answer of inputs[missedN][n]
     private final float[] outputs = new float[4];
-    private int inputsN = 0;
+    private final float[] evaluateInput = new float[Encoder.INPUTS_N];
 
     Brain(Field field) {
+        this(field, new ReplayBuffer(CAPACITY, ReplayBuffer.RING, false));
+    }
+
+    // Brain recording moves into this empty buffer
+    Brain(Field field, ReplayBuffer moves) {
+        this(field, moves, Encoder.getRelative());
+    }
+
+    // Brain recording moves into this empty buffer, with the net for the input of this encoder
+    Brain(Field field, ReplayBuffer moves, Encoder encoder) {
+        this(field, Net.getNet(new int[]{Encoder.INPUTS_N, 40, 20, 8}), null, moves, encoder);
+    }
+
+    private Brain(Field field, Net net, QuantizedNet quantizedNet, ReplayBuffer moves, Encoder encoder) {
         this.field = field;
-        net = Net.getNet(new int[]{17, 40, 20, 8});
+        this.net = net;
+        this.quantizedNet = quantizedNet;
+        this.moves = moves;
+        this.encoder = encoder;
+        // inputs[missedN] are the first missedN arrays of inputs[4]
+        inputs[4] = new float[4][Encoder.INPUTS_N];
+        for (int missedN = 0; missedN < 4; missedN++) {
+            inputs[missedN] = Arrays.copyOf(inputs[4], missedN);
+        }
+    }
+
+    // Return brain with the same net for the other thread, the net is not copied, recorded moves are not copied
+    // it has its own empty cache if this brain has the cache
+    Brain copy() {
+        Brain brain = new Brain(field, net, quantizedNet, moves.getEmpty(), encoder);
+        brain.cache = cache == null ? null : cache.getEmpty();
+        return brain;
+    }
+
+    // Return brain for the other thread, which answers with 8 bit copy of the current weights of the net
+    // it does not see the next learning of this brain
+    Brain quantize() {
+        Brain brain = new Brain(field, net, net.quantize(), moves.getEmpty(), encoder);
+        brain.cache = cache == null ? null : cache.getEmpty();
+        return brain;
+    }
+
+    // Answer from this cache for the fields seen before with the same weights, null - do not use the cache
+    // the cache is cleared after each change of the weights
+    void setCache(AnswerCache cache) {
+        this.cache = cache;
     }
 
     // Initialize net
@@ -22,12 +91,26 @@ class Brain {
         net.initialize();
     }
 
-    // Save net and field to file, return true if OK
+    // Set rule of update of the weights for the next learning in mini-batches, see Optimizer
+    // return false if incorrect type
+    boolean setOptimizer(int type) {
+        return net.setOptimizer(type);
+    }
+
+    // Save net in the model format of the Net, field and state of the optimizer after it to file, return true if OK
     boolean save(File file) {
+        ByteBuffer buffer = ByteBuffer.allocate(net.getModelSize());
+        net.save(buffer);
+        buffer.flip();
         try {
-            DataOutputStream stream = new DataOutputStream(new FileOutputStream(file));
-            net.save(stream);
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
             field.save(stream);
+            net.saveOptimizer(stream);
             stream.close();
         } catch (IOException e) {
             return false;
@@ -36,15 +119,44 @@ class Brain {
     }
 
     // Load net and field from file, return true if OK
+    // file is read at once into the buffer and closed, weights are copied from it,
+    // the file of the old version without the model format is loaded too,
+    // state of the optimizer is loaded if it is in the file
     boolean load(File file) {
         if (!file.exists()) {
             return false;
         }
         try {
-            DataInputStream stream = new DataInputStream(new FileInputStream(file));
-            net.load(stream);
-            field.load(stream);
-            stream.close();
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            if (channel.size() > Integer.MAX_VALUE) {
+                channel.close();
+                throw new IOException("too big file");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    channel.close();
+                    throw new IOException("end of file");
+                }
+            }
+            channel.close();
+            buffer.flip();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() >= 4 && buffer.getInt(0) == Net.MAGIC) {
+                net.load(buffer);
+                byte[] fieldBytes = new byte[buffer.remaining()];
+                buffer.get(fieldBytes);
+                DataInputStream stream = new DataInputStream(new ByteArrayInputStream(fieldBytes));
+                field.load(stream);
+                if (stream.available() > 0) {
+                    net.loadOptimizer(stream);
+                }
+            } else {
+                DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                net.load(stream);
+                field.load(stream);
+                stream.close();
+            }
         } catch (IOException e) {
             return false;
         }
@@ -53,29 +165,45 @@ class Brain {
 
     // Look at field, save it, make answers
     void perceive() {
+        perceive(field);
+    }
+
+    // Look at this field, save it, make answers
+    // with the cache only the directions missed in it are perceived
+    private void perceive(Field field) {
+        long version = getVersion();
+        int missedN = 0;
         for (int direction = 0; direction < 4; direction++) {
-            float[] input = inputs[inputsN][direction];
-            // find max
-            float max = 0;
+            long nextField = 0;
             for (int cellN = 0; cellN < 16; cellN++) {
-                int cell = field.getNextFieldCell(direction, cellN);
-                if (cell > max) {
-                    max = cell;
-                }
+                nextField = Board.setCell(nextField, cellN, field.getNextFieldCell(direction, cellN));
             }
-            // fill input with 1, 0.5, 0.25, ... , 0
-            for (int cellN = 0; cellN < 16; cellN++) {
-                int cell = field.getNextFieldCell(direction, cellN);
-                input[cellN] = cell == 0 ? 0 : (float) (1 / Math.pow(2, max - cell));
+            nextFields[direction] = nextField;
+            scores[direction] = field.getScore(direction);
+            if (cache != null) {
+                outputs[direction] = cache.get(nextField, scores[direction], version);
+                if (!Float.isNaN(outputs[direction])) {
+                    continue;
+                }
             }
-            // fill input[16] with score / 256 or -2
-            float score = field.getScore(direction);
-            if (score >= 0) {
-                score /= 256f;
+            encoder.encode(nextField, scores[direction], inputs[4][missedN]);
+            missedDirections[missedN++] = direction;
+        }
+        if (missedN == 0) {
+            return;
+        }
+        // perceive all missed directions at once
+        if (quantizedNet == null) {
+            net.getAnswers(inputs[missedN], missedOutputs);
+        } else {
+            quantizedNet.getAnswers(inputs[missedN], missedOutputs);
+        }
+        for (int n = 0; n < missedN; n++) {
+            int direction = missedDirections[n];
+            outputs[direction] = missedOutputs[n];
+            if (cache != null) {
+                cache.put(nextFields[direction], scores[direction], version, outputs[direction]);
             }
-            input[16] = score;
-            // perceive
-            outputs[direction] = net.getAnswer(input);
         }
     }
 
@@ -96,48 +224,352 @@ class Brain {
         return answer;
     }
 
-    // Add player choice after perceive
-    void add(int direction) {
-        answers[inputsN] = direction;
-        if (inputsN < MAX_INPUTS - 1) {
-            inputsN++;
+    // Perceive this field, return possible direction with max answer
+    @Override
+    public int getDirection(Field field) {
+        perceive(field);
+        int answer = 0;
+        float max = -1;
+        for (int direction = 0; direction < 4; direction++) {
+            if (field.getScore(direction) >= 0 && outputs[direction] > max) {
+                max = outputs[direction];
+                answer = direction;
+            }
+        }
+        return answer;
+    }
+
+    // Return answer for the field after the move, the same as perceive gives
+    @Override
+    public float evaluate(long nextField, int score) {
+        long version = getVersion();
+        if (cache != null) {
+            float answer = cache.get(nextField, score, version);
+            if (!Float.isNaN(answer)) {
+                return answer;
+            }
+        }
+        encoder.encode(nextField, score, evaluateInput);
+        float answer = quantizedNet == null ? net.getAnswer(evaluateInput) : quantizedNet.getAnswer(evaluateInput);
+        if (cache != null) {
+            cache.put(nextField, score, version, answer);
         }
+        return answer;
+    }
+
+    // Write the next moves to this log too and learn all moves of the log instead of the recorded moves,
+    // null - do not use the log, log is not closed
+    void setLog(PositionLog log) {
+        this.log = log;
+    }
+
+    // Add player choice after perceive, full buffer replaces the old move, the move is written to the log if it is set
+    // return false if the log can not be written
+    boolean add(int direction) {
+        moves.add(nextFields, scores, direction);
+        if (log != null) {
+            try {
+                log.add(nextFields, scores, direction);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Return number of the recorded moves
+    int getMovesN() {
+        return moves.size();
     }
 
     void learn() {
+        learn(1);
+    }
+
+    void learn(int batchSize) {
+        learn(batchSize, 1);
+    }
+
+    // Learn all recorded moves or all moves of the log 1000 times, each mismatch of the net and the player gives 2 examples
+    // the log is streamed from the disk in chunks with the same memory for any size, moves are shuffled in each chunk
+    // batchSize == 1 - learn each example at once up to 10 times,
+    // batchSize > 1 - learn all examples of the epoch in mini-batches of batchSize, one update of the weights for each
+    // with the optimizer of setOptimizer,
+    // gradients are calculated in threadsN threads, the same moves give the same weights with any threadsN
+    void learn(int batchSize, int threadsN) {
+        learn(batchSize, threadsN, new SplittableRandom());
+    }
+
+    // Learn as learn(batchSize, threadsN), moves of the log are shuffled with random,
+    // the same log and the same random give the same weights
+    void learn(int batchSize, int threadsN, RandomGenerator random) {
+        learn(batchSize, threadsN, random, i -> System.out.println("i = " + i));
+    }
+
+    // Learn recorded moves as learn() on executor with the copy of the net, return future of the end of learning
+    // the net answers with the old weights during learning, then all new weights replace them at once,
+    // progress gets the number of each epoch before it starts in the thread of executor,
+    // moves are copied, moves recorded after the call are not learned this time,
+    // with the log, moves are not copied, moves written to it before each epoch are learned
+    CompletableFuture<Void> learn(Executor executor, IntConsumer progress) {
+        Brain brain = new Brain(field, net.copy(), null, log == null ? moves.copy() : null, encoder);
+        if (log != null) {
+            try {
+                log.flush();
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            brain.log = log;
+        }
+        return CompletableFuture.runAsync(() -> {
+            brain.learn(1, 1, new SplittableRandom(), progress);
+            net.setWeights(brain.net);
+        }, executor);
+    }
+
+    // Learn as learn(batchSize, threadsN, random), progress gets the number of each epoch before it starts
+    private void learn(int batchSize, int threadsN, RandomGenerator random, IntConsumer progress) {
+        flushLog();
+        Learning learning = new Learning(batchSize, threadsN, random);
         for (int i = 0; i < 1000; i++) {
-            System.out.println("i = " + i);
-            for (int set = 0; set < inputsN; set++) {
-                float max = 0;
-                int directionWithMaxOut = -1;
-                for (int direction = 0; direction < 4; direction++) {
-                    if (inputs[set][direction][16] < 0) {
-                        outputs[direction] = -1;
-                    } else {
-                        outputs[direction] = net.getAnswer(inputs[set][direction]);
-                        if (outputs[direction] > max) {
-                            max = outputs[direction];
-                            directionWithMaxOut = direction;
-                        }
-                    }
+            progress.accept(i);
+            learning.learn((5000 - i) / 5000f);
+        }
+        learning.shutdown();
+    }
+
+    // Learn recorded moves or all moves of the log 1000 times as learn() in threadsN threads,
+    // each thread learns its own part of the moves and changes the same weights without locks (hogwild),
+    // sparse updates of the other threads can be lost, it does not stop the convergence
+    // the log is streamed in chunks as learn(), each chunk is split between the threads
+    // return share of the moves answered as the player after learning, see getAccuracy()
+    float learnParallel(int threadsN) {
+        return learnParallel(threadsN, i -> System.out.println("i = " + i));
+    }
+
+    // Learn as learnParallel(threadsN), progress gets the number of each epoch before it starts
+    float learnParallel(int threadsN, IntConsumer progress) {
+        ForkJoinPool pool = new ForkJoinPool(threadsN);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(threadsN);
+        ReplayBuffer chunk = log == null ? moves : new ReplayBuffer(CHUNK, ReplayBuffer.RING, true);
+        long size = flushLog();
+        for (int i = 0; i < 1000; i++) {
+            progress.accept(i);
+            float alpha = (5000 - i) / 5000f;
+            for (long first = 0, movesN; first < size; first += movesN) {
+                movesN = readChunk(first, chunk);
+                for (int threadN = 0; threadN < threadsN; threadN++) {
+                    int chunkFirst = (int) (movesN * threadN / threadsN);
+                    int chunkLast = (int) (movesN * (threadN + 1) / threadsN);
+                    tasks.add(pool.submit(() -> learn(chunk, chunkFirst, chunkLast, alpha)));
+                }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+                tasks.clear();
+            }
+        }
+        pool.shutdown();
+        return getAccuracy();
+    }
+
+    // Return share of the recorded moves or all moves of the log the net answers as the player,
+    // 1 if there are no moves
+    float getAccuracy() {
+        float[][] input = new float[4][Encoder.INPUTS_N];
+        float[] targets = new float[4];
+        ReplayBuffer chunk = log == null ? moves : new ReplayBuffer(CHUNK, ReplayBuffer.RING, true);
+        long size = flushLog();
+        long matchesN = 0;
+        for (long first = 0, movesN; first < size; first += movesN) {
+            movesN = readChunk(first, chunk);
+            for (int set = 0; set < movesN; set++) {
+                if (getTargets(chunk, set, input, targets) < 0) {
+                    matchesN++;
+                }
+            }
+        }
+        return size == 0 ? 1 : (float) ((double) matchesN / size);
+    }
+
+    // Learn moves from first to last - 1 once with this alpha
+    private void learn(ReplayBuffer moves, int first, int last, float alpha) {
+        float[][] input = new float[4][Encoder.INPUTS_N];
+        float[] targets = new float[4];
+        for (int set = first; set < last; set++) {
+            int directionWithMaxOut = getTargets(moves, set, input, targets);
+            if (directionWithMaxOut >= 0) {
+                int answer = moves.getDirection(set);
+                net.learn(input[directionWithMaxOut], targets[directionWithMaxOut], alpha, 10, 0.00001f);
+                net.learn(input[answer], targets[answer], alpha, 10, 0.00001f);
+            }
+        }
+    }
+
+    // Flush the log if it is set, return number of the moves to learn, recorded or of the log
+    private long flushLog() {
+        if (log == null) {
+            return moves.size();
+        }
+        try {
+            log.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return log.size();
+    }
+
+    // Read moves of the log from first into chunk, return number of the moves
+    // without the log chunk is the recorded moves, all of them are returned
+    private int readChunk(long first, ReplayBuffer chunk) {
+        if (log == null) {
+            return chunk.size();
+        }
+        try {
+            return log.read(first, chunk);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Return version of the answers for the cache, 8 bit copy does not change
+    private long getVersion() {
+        return quantizedNet == null ? net.getVersion() : -1;
+    }
+
+    // Fill input[direction] of the move of moves and perceive it,
+    // if the direction with max answer is not the player direction, return it
+    // and exchange answers of both directions in outputs to get targets, return -1 otherwise
+    private int getTargets(ReplayBuffer moves, int set, float[][] input, float[] outputs) {
+        for (int direction = 0; direction < 4; direction++) {
+            encoder.encode(moves.getNextField(set, direction), moves.getScore(set, direction), input[direction]);
+        }
+        float max = 0;
+        int directionWithMaxOut = -1;
+        net.getAnswers(input, outputs);
+        for (int direction = 0; direction < 4; direction++) {
+            if (moves.getScore(set, direction) < 0) {
+                outputs[direction] = -1;
+            } else if (outputs[direction] > max) {
+                max = outputs[direction];
+                directionWithMaxOut = direction;
+            }
+        }
+        int answer = moves.getDirection(set);
+        if (directionWithMaxOut == answer || directionWithMaxOut < 0) {
+            return -1;
+        }
+        float answerOut = outputs[answer];
+        if (max - answerOut < 0.0001f) {
+            if ((max + answerOut) / 2f > 0.5) {
+                answerOut -= 0.0001;
+            } else {
+                max += 0.0001;
+            }
+        }
+        outputs[directionWithMaxOut] = answerOut;
+        outputs[answer] = max;
+        return directionWithMaxOut;
+    }
+
+    // Trainer and memory of one learning
+    private class Learning {
+        private final PositionLog log = Brain.this.log;
+        private final int batchSize;
+        private final Trainer trainer; // null if batchSize == 1
+        private final float[][] input = new float[4][Encoder.INPUTS_N];
+        private final float[][] examples; // allocated for the mismatches
+        private final float[] targets;
+        private final ReplayBuffer[] chunks; // [chunkN & 1] chunk of the log, null without the log
+        private final int[] order; // shuffled numbers of the moves of the chunk, null without the log
+        private final RandomGenerator random; // shuffle of the chunks
+
+        private Learning(int batchSize, int threadsN, RandomGenerator random) {
+            this.batchSize = batchSize;
+            this.random = random;
+            trainer = batchSize > 1 ? new Trainer(net, threadsN, SLICE_SIZE) : null;
+            int movesN = log == null ? moves.size() : CHUNK;
+            examples = new float[2 * movesN][];
+            targets = new float[2 * movesN];
+            if (log == null) {
+                chunks = null;
+                order = null;
+            } else {
+                chunks = new ReplayBuffer[]{new ReplayBuffer(CHUNK, ReplayBuffer.RING, true),
+                        new ReplayBuffer(CHUNK, ReplayBuffer.RING, true)};
+                order = new int[CHUNK];
+            }
+        }
+
+        // Learn all moves once with this alpha, recorded moves in their order or the flushed moves of the log,
+        // the next chunk of the log is read while this chunk is learned
+        private void learn(float alpha) {
+            if (log == null) {
+                learn(moves, null, alpha);
+                return;
+            }
+            long size = log.size();
+            CompletableFuture<Integer> next = read(0, chunks[0]);
+            for (long first = 0; first < size; first += CHUNK) {
+                ReplayBuffer chunk = chunks[(int) (first / CHUNK) & 1];
+                int movesN = next.join();
+                if (first + CHUNK < size) {
+                    next = read(first + CHUNK, chunks[(int) (first / CHUNK + 1) & 1]);
+                }
+                // shuffle inside out
+                for (int n = 0; n < movesN; n++) {
+                    int m = random.nextInt(n + 1);
+                    order[n] = order[m];
+                    order[m] = n;
+                }
+                learn(chunk, order, alpha);
+            }
+        }
+
+        private void shutdown() {
+            if (trainer != null) {
+                trainer.shutdown();
+            }
+        }
+
+        // Learn moves once in order[n] or in the order of moves if order is null
+        private void learn(ReplayBuffer moves, int[] order, float alpha) {
+            int movesN = moves.size();
+            int examplesN = 0;
+            for (int n = 0; n < movesN; n++) {
+                int set = order == null ? n : order[n];
+                int directionWithMaxOut = getTargets(moves, set, input, outputs);
+                if (directionWithMaxOut < 0) {
+                    continue;
                 }
-                int answer = answers[set];
-                if (directionWithMaxOut != answer) {
-                    float answerOut = outputs[answer];
-                    if (max - answerOut < 0.0001f) {
-                        if ((max + answerOut) / 2f > 0.5) {
-                            answerOut -= 0.0001;
-                        } else {
-                            max += 0.0001;
+                int answer = moves.getDirection(set);
+                if (batchSize > 1) {
+                    for (int direction : new int[]{directionWithMaxOut, answer}) {
+                        if (examples[examplesN] == null) {
+                            examples[examplesN] = new float[Encoder.INPUTS_N];
                         }
+                        System.arraycopy(input[direction], 0, examples[examplesN], 0, Encoder.INPUTS_N);
+                        targets[examplesN++] = outputs[direction];
                     }
-                    int l = net.learn(inputs[set][directionWithMaxOut], answerOut, (5000 - i) / 5000f, 10, 0.00001f);
-                    int k = net.learn(inputs[set][answer], max, (5000 - i) / 5000f, 10, 0.00001f);
-                    System.out.println(directionWithMaxOut + " to " + answerOut + " " + l);
-                    System.out.println(answer + " to " + max + " " + k);
+                    continue;
                 }
+                net.learn(input[directionWithMaxOut], outputs[directionWithMaxOut], alpha, 10, 0.00001f);
+                net.learn(input[answer], outputs[answer], alpha, 10, 0.00001f);
             }
+            if (examplesN > 0) {
+                trainer.learn(Arrays.copyOf(examples, examplesN), Arrays.copyOf(targets, examplesN), alpha, batchSize);
+            }
+        }
+
+        // Read moves of the log from first into chunk in the other thread, return future of the number of moves
+        private CompletableFuture<Integer> read(long first, ReplayBuffer chunk) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return log.read(first, chunk);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
         }
-        inputsN = 0;
     }
-}
\ No newline at end of file
+}
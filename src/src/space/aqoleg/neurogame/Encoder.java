@@ -0,0 +1,42 @@
+// Input of the net for the field after the move, written into the array of the caller without allocation
+// encoders can be exchanged to compare the inputs, the net must learn and answer with the same encoder
+package space.aqoleg.neurogame;
+
+interface Encoder {
+    int INPUTS_N = 17; // 16 cells and score
+
+    // Fill input of each cell with 1, 0.5, 0.25, ... for max cell, max cell - 1, ... and 0 for empty cell,
+    // input[16] with score / 256 or with score if there is no move
+    // values are taken from the table [max * 16 + cell]
+    static Encoder getRelative() {
+        float[] values = new float[(Board.MAX_CELL + 1) * 16];
+        for (int max = 0; max <= Board.MAX_CELL; max++) {
+            for (int cell = 1; cell <= max; cell++) {
+                values[max * 16 + cell] = (float) (1 / Math.pow(2, max - cell));
+            }
+        }
+        return (nextField, score, input) -> {
+            int offset = Board.getMaxCell(nextField) * 16;
+            for (int cellN = 0; cellN < 16; cellN++) {
+                input[cellN] = values[offset + (int) (nextField & 0xF)];
+                nextField >>>= 4;
+            }
+            input[16] = score >= 0 ? score / 256f : score;
+        };
+    }
+
+    // Fill input of each cell with cell / MAX_CELL, input[16] as getRelative()
+    static Encoder getAbsolute() {
+        return (nextField, score, input) -> {
+            for (int cellN = 0; cellN < 16; cellN++) {
+                input[cellN] = (nextField & 0xF) / (float) Board.MAX_CELL;
+                nextField >>>= 4;
+            }
+            input[16] = score >= 0 ? score / 256f : score;
+        };
+    }
+
+    // nextField - field after the move packed into Board long, score - Field.getScore() of this move,
+    // input - array for at least INPUTS_N values
+    void encode(long nextField, int score, float[] input);
+}
@@ -0,0 +1,8 @@
+// Value of the field after the move before computer turn, more is better, loose field is 0
+package space.aqoleg.neurogame;
+
+interface Evaluator {
+
+    // nextField - field after the move packed into Board long, score - Field.getScore() of this move
+    float evaluate(long nextField, int score);
+}
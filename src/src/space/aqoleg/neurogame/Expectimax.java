@@ -0,0 +1,88 @@
+// Depth-limited search, player chooses the move with max value, computer fills random empty cell
+// with 2 (90% odd) or 4 (10% odd), value of the computer turn is the average of all fillings
+// values of the fields after the last move are given by evaluator
+// computer turns with probability less then minProbability are not searched deeper
+// searched computer turns are saved in the transposition table, its own or shared with other threads
+// each move starts new age of the table, the shared table ages with the moves of all threads,
+// so the entries of the latest searches are kept first
+package space.aqoleg.neurogame;
+
+class Expectimax implements Policy {
+    private final Evaluator evaluator;
+    private final int depth;
+    private final float minProbability;
+    private final TranspositionTable table;
+
+    // depth - number of player moves to search, depth > 0, 0 <= minProbability < 1
+    Expectimax(Evaluator evaluator, int depth, float minProbability) throws ExceptionInInitializerError {
+        this(evaluator, depth, minProbability, new TranspositionTable(16, false));
+    }
+
+    // Search with the shared table, table is symmetric only for symmetric evaluator
+    Expectimax(Evaluator evaluator, int depth, float minProbability, TranspositionTable table)
+            throws ExceptionInInitializerError {
+        if (depth < 1) {
+            throw new ExceptionInInitializerError("depth < 1");
+        }
+        this.evaluator = evaluator;
+        this.depth = depth;
+        this.minProbability = minProbability;
+        this.table = table;
+    }
+
+    @Override
+    public int getDirection(Field field) {
+        table.nextAge();
+        long board = field.getBoard();
+        int answer = 0;
+        float max = -1;
+        for (int direction = 0; direction < 4; direction++) {
+            int score = field.getScore(direction);
+            if (score >= 0) {
+                float value = getComputerValue(Board.move(board, direction), score, depth - 1, 1);
+                if (value > max) {
+                    max = value;
+                    answer = direction;
+                }
+            }
+        }
+        return answer;
+    }
+
+    // Return max value of the possible moves, 0 if loose
+    private float getPlayerValue(long board, int depth, float probability) {
+        float max = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            long nextBoard = Board.move(board, direction);
+            if (nextBoard != board) {
+                int score = Board.getMoveScore(board, direction, nextBoard);
+                max = Math.max(max, getComputerValue(nextBoard, score, depth - 1, probability));
+            }
+        }
+        return max;
+    }
+
+    // Return average value of the fillings of the empty cells
+    // board - field after the move, score - Field scores of this move, probability - odd of this board
+    private float getComputerValue(long board, int score, int depth, float probability) {
+        if (depth == 0 || probability < minProbability) {
+            return evaluator.evaluate(board, score);
+        }
+        float value = table.get(board, depth);
+        if (!Float.isNaN(value)) {
+            return value;
+        }
+        int emptyN = Board.countEmpty(board);
+        float cellProbability = probability / emptyN;
+        float sum = 0;
+        for (int cellN = 0; cellN < 16; cellN++) {
+            if (Board.getCell(board, cellN) == 0) {
+                sum += 0.9f * getPlayerValue(Board.setCell(board, cellN, 1), depth, cellProbability * 0.9f);
+                sum += 0.1f * getPlayerValue(Board.setCell(board, cellN, 2), depth, cellProbability * 0.1f);
+            }
+        }
+        value = sum / emptyN;
+        table.put(board, depth, value);
+        return value;
+    }
+}
@@ -0,0 +1,98 @@
+// Many fields in the contiguous arrays, each field plays the same as Field
+// fields are packed into Board longs, next fields and scores of the fieldN are from fieldN * 4 + direction
+package space.aqoleg.neurogame;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+class FieldBatch {
+    private final int size;
+    private final RandomGenerator random; // computer turns of all fields
+    private final long[] fields; // [fieldN]
+    private final long[] nextFields; // [fieldN * 4 + direction] possible fields after each move before computer turn
+    private final int[] scores; // [fieldN * 4 + direction] scores of each move, if score < 0 there is no move
+    private final boolean[] loose; // [fieldN]
+
+    FieldBatch(int size) {
+        this(size, new SplittableRandom());
+    }
+
+    // Batch with its own random, the same seeded random replays the same games
+    FieldBatch(int size, RandomGenerator random) {
+        this.size = size;
+        this.random = random;
+        fields = new long[size];
+        nextFields = new long[size * 4];
+        scores = new int[size * 4];
+        loose = new boolean[size];
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    // Clear all fields and make 2 computer steps on each
+    void start() {
+        for (int fieldN = 0; fieldN < size; fieldN++) {
+            fields[fieldN] = Board.playComputer(Board.playComputer(0, random), random);
+        }
+        fillNextMoves();
+    }
+
+    // Clear this field and make 2 computer steps
+    void start(int fieldN) {
+        fields[fieldN] = Board.playComputer(Board.playComputer(0, random), random);
+        loose[fieldN] = Board.fillNextMoves(fields[fieldN], nextFields, scores, fieldN * 4);
+    }
+
+    // Play each field in its direction, fields with impossible moves or directions < 0 or > 3 are not played
+    // return count of played fields
+    int play(int[] directions) {
+        int playedN = 0;
+        for (int fieldN = 0; fieldN < size; fieldN++) {
+            int direction = directions[fieldN];
+            if (direction >= 0 && direction < 4 && scores[fieldN * 4 + direction] >= 0) {
+                long field = Board.playComputer(nextFields[fieldN * 4 + direction], random);
+                fields[fieldN] = field;
+                loose[fieldN] = Board.fillNextMoves(field, nextFields, scores, fieldN * 4);
+                playedN++;
+            }
+        }
+        return playedN;
+    }
+
+    // Return count of fields without possible moves
+    int getLooseN() {
+        int looseN = 0;
+        for (boolean fieldLoose : loose) {
+            if (fieldLoose) {
+                looseN++;
+            }
+        }
+        return looseN;
+    }
+
+    // Return field packed into Board long
+    long getField(int fieldN) {
+        return fields[fieldN];
+    }
+
+    long getNextField(int fieldN, int direction) {
+        return nextFields[fieldN * 4 + direction];
+    }
+
+    int getScore(int fieldN, int direction) {
+        return scores[fieldN * 4 + direction];
+    }
+
+    boolean areLoose(int fieldN) {
+        return loose[fieldN];
+    }
+
+    // Calculate and fill nextFields, scores, loose of all fields
+    private void fillNextMoves() {
+        for (int fieldN = 0; fieldN < size; fieldN++) {
+            loose[fieldN] = Board.fillNextMoves(fields[fieldN], nextFields, scores, fieldN * 4);
+        }
+    }
+}
@@ -1,12 +1,26 @@
 package space.aqoleg.neurogame;
 
+import javax.swing.*;
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Game {
     private final File file = new File(new File(System.getProperty("user.home"), "Documents"), "neurogame.sv");
+    // all moves of all games, brain learns them
+    private final File logFile = new File(new File(System.getProperty("user.home"), "Documents"), "neurogame.log");
     private final Field field;
     private final Brain brain;
     private final Frame frame;
+    // learning runs here, not in the event dispatch thread, the brain answers with the old weights till the end
+    private final ExecutorService learner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "learner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private CompletableFuture<Void> learning = CompletableFuture.completedFuture(null);
 
     private Game() {
         field = new Field();
@@ -32,7 +46,9 @@ public class Game {
     }
 
     void load() {
-        if (brain.load(file)) {
+        if (!learning.isDone()) {
+            frame.printMessage("Wait for the end of learning");
+        } else if (brain.load(file)) {
             brain.perceive();
             frame.printField();
             printAnswers();
@@ -54,12 +70,41 @@ public class Game {
         }
     }
 
+    // Start learning in the background, show progress and new answers in the event dispatch thread
     void learn() {
-        brain.learn();
+        if (!learning.isDone()) {
+            frame.printMessage("Learning is not finished");
+            return;
+        }
+        learning = brain.learn(learner, i -> {
+            if (i % 10 == 0) {
+                SwingUtilities.invokeLater(() -> frame.printMessage("Learning " + i / 10 + "%"));
+            }
+        });
+        learning.whenComplete((result, exception) -> SwingUtilities.invokeLater(() -> {
+            if (exception != null) {
+                frame.printMessage("Learning failed");
+            } else {
+                brain.perceive();
+                printAnswers();
+            }
+        }));
     }
 
     private void initialize() {
         frame.createAndShowGUI();
+        try {
+            PositionLog log = new PositionLog(logFile);
+            brain.setLog(log);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    log.close();
+                } catch (IOException ignored) {
+                }
+            }));
+        } catch (IOException e) {
+            frame.printMessage("Moves are not saved in " + logFile.getPath());
+        }
         if (!brain.load(file)) {
             brain.initialize();
             start();
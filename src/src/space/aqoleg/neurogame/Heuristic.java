@@ -0,0 +1,63 @@
+// Evaluator from the row table: empty cells, possible additions and monotonic lines
+// value of the field is the sum of values of the rows and columns, value > 0, it is the same for symmetric fields
+package space.aqoleg.neurogame;
+
+class Heuristic implements Evaluator {
+    private static final float EMPTY_WEIGHT = 270;
+    private static final float ADDITION_WEIGHT = 700;
+    private static final float MONOTONIC_WEIGHT = 47;
+    private static final float[] ROWS = new float[65536]; // [row] value of the row
+
+    static {
+        for (int row = 0; row < 65536; row++) {
+            int emptyN = 0;
+            int additionsN = 0;
+            int previousCell = 0;
+            int sameCellsN = 0;
+            for (int linePos = 0; linePos < 4; linePos++) {
+                int cell = (row >>> (linePos << 2)) & 0xF;
+                if (cell == 0) {
+                    emptyN++;
+                } else {
+                    if (cell == previousCell) {
+                        sameCellsN++;
+                    } else if (sameCellsN > 0) {
+                        additionsN += 1 + sameCellsN;
+                        sameCellsN = 0;
+                    }
+                    previousCell = cell;
+                }
+            }
+            if (sameCellsN > 0) {
+                additionsN += 1 + sameCellsN;
+            }
+            // big cells are good, but cells decreasing in both directions are bad
+            float sum = 0;
+            float decreasing = 0;
+            float increasing = 0;
+            for (int linePos = 0; linePos < 4; linePos++) {
+                float cell = (float) Math.pow((row >>> (linePos << 2)) & 0xF, 4);
+                sum += cell;
+                if (linePos > 0) {
+                    float previous = (float) Math.pow((row >>> ((linePos - 1) << 2)) & 0xF, 4);
+                    if (previous > cell) {
+                        decreasing += previous - cell;
+                    } else {
+                        increasing += cell - previous;
+                    }
+                }
+            }
+            ROWS[row] = EMPTY_WEIGHT * emptyN + ADDITION_WEIGHT * additionsN
+                    + MONOTONIC_WEIGHT * (sum - Math.min(decreasing, increasing));
+        }
+    }
+
+    @Override
+    public float evaluate(long nextField, int score) {
+        long transposed = Board.transpose(nextField);
+        return 1 + ROWS[Board.getRow(nextField, 0)] + ROWS[Board.getRow(nextField, 1)]
+                + ROWS[Board.getRow(nextField, 2)] + ROWS[Board.getRow(nextField, 3)]
+                + ROWS[Board.getRow(transposed, 0)] + ROWS[Board.getRow(transposed, 1)]
+                + ROWS[Board.getRow(transposed, 2)] + ROWS[Board.getRow(transposed, 3)];
+    }
+}
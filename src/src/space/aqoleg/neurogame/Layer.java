@@ -4,80 +4,74 @@
 // error function: error = 0.5 * (target - out)^2
 // sigma = dError/dOut = 0.5 * 2 * (target - out)^(2 - 1) * (-1) = out - target
 // sigma = out - target
+// layer keeps only the weights, inputs, outputs, sigmas and gradients are given by the caller,
+// so one layer can perceive in many threads at once
 package space.aqoleg.neurogame;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 class Layer {
-    private final int inputsN; // = input.length = upSigma.length
-    private final int outputsN; // = output.length = sigma.length
-    private final float[] output; // 0 < output[n] < 1
-    private final float[] upSigma; // sigma for each output of the up layer, null for first layer
-    private final float[] sigma; // sigma for each output of this layer, sigma[n] = output[n] - target
-    private final float[][] weights; // [out][in], weights[out][inputsN] is a bias
-    private float[] input; // input[n] >= 0 for the first layer, 0 < input[n] < 1 for others
-
-    private Layer(int inputsN, int outputsN, float[] input, float[] output, float[] upSigma, float[] sigma) {
+    private final int inputsN;
+    private final int outputsN;
+    // [in * outputsN + out], weights of one input to all outputs are contiguous
+    // weights[inputsN * outputsN + out] is a bias
+    private final float[] weights;
+    private int sigmoid = Sigmoid.EXACT; // implementation of the activation function
+
+    private Layer(int inputsN, int outputsN) {
         this.inputsN = inputsN;
         this.outputsN = outputsN;
-        this.input = input;
-        this.output = output;
-        this.upSigma = upSigma;
-        this.sigma = sigma;
-        weights = new float[outputsN][inputsN + 1];
-    }
-
-    // Create first layer
-    // inputsN - number of the input of the net, input set with setInput(input)
-    // output of this layer is the input of the down layer
-    // sigma of this layer is upSigma of the down layer
-    // sigma.length = output.length, inputsN > 1
-    static Layer getFirstLayer(int inputsN, float[] outputs, float[] sigmas) throws ExceptionInInitializerError {
-        if (outputs.length != sigmas.length) {
-            throw new ExceptionInInitializerError("output.length != sigma.length");
-        }
+        weights = new float[(inputsN + 1) * outputsN];
+    }
+
+    // Create layer with zero weights
+    // inputsN - number of the inputs of the net for the first layer or number of the outputs of the up layer
+    // outputsN - number of the inputs of the down layer or 1 for the last layer
+    // inputsN > 1, outputsN > 0
+    static Layer getLayer(int inputsN, int outputsN) throws ExceptionInInitializerError {
         if (inputsN < 2) {
             throw new ExceptionInInitializerError("inputsN < 2");
         }
-        return new Layer(inputsN, outputs.length, new float[inputsN], outputs, null, sigmas);
-    }
-
-    // Create middle layer
-    // input of this layer is the output of the up layer
-    // output of this layer is the input of the down layer or output of the net (for the last layer)
-    // upSigma of this layer is sigma of the up layer
-    // sigma of this layer is upSigma of the down layer or sigma of the net (for the last layer)
-    // upSigma.length = input.length, sigma.length = output.length, input.length > 1
-    static Layer getLayer(float[] inputs, float[] outputs, float[] upSigmas, float[] sigmas)
-            throws ExceptionInInitializerError {
-        if (inputs.length < 2) {
-            throw new ExceptionInInitializerError("input.length < 2");
-        }
-        if (upSigmas.length != inputs.length) {
-            throw new ExceptionInInitializerError("upSigma.length != input.length");
+        if (outputsN < 1) {
+            throw new ExceptionInInitializerError("outputsN < 1");
         }
-        if (outputs.length != sigmas.length) {
-            throw new ExceptionInInitializerError("output.length != sigma.length");
-        }
-        return new Layer(inputs.length, outputs.length, inputs, outputs, upSigmas, sigmas);
+        return new Layer(inputsN, outputsN);
+    }
+
+    // Return weight of this input to this output, in == inputsN for the bias
+    float getWeight(int in, int out) {
+        return weights[in * outputsN + out];
     }
 
     // Initialize with small, randomly chosen weights
     void initialize() {
+        initialize(new SplittableRandom());
+    }
+
+    // Initialize with small weights from this random, -0.5 <= weight < 0.5
+    void initialize(RandomGenerator random) {
         for (int out = 0; out < outputsN; out++) {
             for (int in = 0; in <= inputsN; in++) {
-                weights[out][in] = (float) ((Math.random() - 0.5));
+                weights[in * outputsN + out] = random.nextFloat() - 0.5f;
             }
         }
     }
 
+    // Copy weights from the layer with the same inputsN and outputsN
+    void copy(Layer layer) {
+        System.arraycopy(layer.weights, 0, weights, 0, weights.length);
+    }
+
     // Save weights to stream
     void save(DataOutputStream stream) throws IOException {
         for (int out = 0; out < outputsN; out++) {
             for (int in = 0; in <= inputsN; in++) {
-                stream.writeFloat(weights[out][in]);
+                stream.writeFloat(weights[in * outputsN + out]);
             }
         }
     }
@@ -86,41 +80,60 @@ class Layer {
     void load(DataInputStream stream) throws IOException {
         for (int out = 0; out < outputsN; out++) {
             for (int in = 0; in <= inputsN; in++) {
-                weights[out][in] = stream.readFloat();
+                weights[in * outputsN + out] = stream.readFloat();
             }
         }
     }
 
-    // Set input of the first layer
-    boolean setInput(float[] input) {
-        if (upSigma == null && input.length == inputsN) {
-            this.input = input;
+    // Return number of the weights with biases
+    int getWeightsN() {
+        return weights.length;
+    }
+
+    // Put all weights into buffer in the order they are kept, [in * outputsN + out], biases last
+    void save(FloatBuffer buffer) {
+        buffer.put(weights);
+    }
+
+    // Get all weights from buffer in the order they are kept, [in * outputsN + out], biases last
+    void load(FloatBuffer buffer) {
+        buffer.get(weights);
+    }
+
+    // Set implementation of the activation function, see Sigmoid
+    boolean setSigmoid(int sigmoid) {
+        if (Sigmoid.isCorrect(sigmoid)) {
+            this.sigmoid = sigmoid;
             return true;
         }
         return false;
     }
 
-    // Do perceive
-    void perceive() {
-        // Do for each output
-        for (int out = 0; out < outputsN; out++) {
-            // calculate net = bias + sum(weight * input)
-            float net = weights[out][inputsN]; // bias
-            for (int in = 0; in < inputsN; in++) {
-                net += weights[out][in] * input[in];
+    // Perceive batchN inputs at once, inputs[sample * inputsN + in], outputs[sample * outputsN + out]
+    // calculate net = bias + sum(weight * input) for all outputs at once, input by input,
+    // so the inner loop runs over contiguous weights and can be compiled into simd instructions,
+    // weights of one input stay in cache for all samples, each net is summed in the same order as one by one
+    void perceive(float[] inputs, float[] outputs, int batchN) {
+        for (int sample = 0; sample < batchN; sample++) {
+            System.arraycopy(weights, inputsN * outputsN, outputs, sample * outputsN, outputsN); // bias
+        }
+        for (int in = 0; in < inputsN; in++) {
+            int offset = in * outputsN;
+            for (int sample = 0; sample < batchN; sample++) {
+                float value = inputs[sample * inputsN + in];
+                int outOffset = sample * outputsN;
+                for (int out = 0; out < outputsN; out++) {
+                    outputs[outOffset + out] += weights[offset + out] * value;
+                }
             }
-            output[out] = (float) (1 / (1 + Math.exp(-net))); // use activation function
         }
+        Sigmoid.apply(sigmoid, outputs, batchN * outputsN); // use activation function
     }
 
-    // Learn, alpha - learning rate, 0 < alpha <= 1
-    void learn(float alpha) {
-        // Clear upSigma
-        if (upSigma != null) {
-            for (int in = 0; in < inputsN; in++) {
-                upSigma[in] = 0;
-            }
-        }
+    // Learn one sample after perceive(input, output, 1), alpha - learning rate, 0 < alpha <= 1
+    // sigma[out] = output[out] - target is replaced with delta,
+    // upSigma[in] is calculated for the up layer if upSigma is not null
+    void learn(float[] input, float[] output, float[] sigma, float[] upSigma, float alpha) {
         // Do for each output
         for (int out = 0; out < outputsN; out++) {
             // use back propagation algorithm to minimize error
@@ -134,23 +147,68 @@ class Layer {
             // dNet/dWeight = input
             //
             // node delta = dError/dNet = dError/dOut * dOut/dNet = sigma * out * (1 - out)
-            float delta = sigma[out] * output[out] * (1 - output[out]);
-            // Do for each input
-            for (int in = 0; in < inputsN; in++) {
-                // upSigma = sum(dError/dUpOut)
-                // dError/dUpOut = dError/dInput = dError/dNet * dNet/dInput = delta * dNet/dInput
-                //
-                // net = bias + sum(weight * input)
-                // dNet/dInput = weight
-                // upSigma += delta * weight
-                // use weight before it will be update!
-                if (upSigma != null) {
-                    upSigma[in] += delta * weights[out][in];
+            sigma[out] = sigma[out] * output[out] * (1 - output[out]);
+        }
+        // Do for each input
+        for (int in = 0; in < inputsN; in++) {
+            int offset = in * outputsN;
+            // upSigma = sum(dError/dUpOut)
+            // dError/dUpOut = dError/dInput = dError/dNet * dNet/dInput = delta * dNet/dInput
+            //
+            // net = bias + sum(weight * input)
+            // dNet/dInput = weight
+            // upSigma = sum(delta * weight)
+            // use weights before they will be update!
+            if (upSigma != null) {
+                float sum = 0;
+                for (int out = 0; out < outputsN; out++) {
+                    sum += sigma[out] * weights[offset + out];
                 }
-                // dError/dWeight = delta * dNet/dWeight = delta * input
-                // weight = weight - alpha * dError/dWeight
-                weights[out][in] -= alpha * delta * input[in];
+                upSigma[in] = sum;
             }
+            // dError/dWeight = delta * dNet/dWeight = delta * input
+            // weight = weight - alpha * dError/dWeight
+            float value = input[in];
+            for (int out = 0; out < outputsN; out++) {
+                weights[offset + out] -= alpha * sigma[out] * value;
+            }
+        }
+    }
+
+    // Add gradients of batchN samples at once without changing weights, see learn
+    // gradients[in * outputsN + out] - sum of dError/dWeight, the same order as weights without the bias
+    // inputs[sample * inputsN + in] and outputs[sample * outputsN + out] are from perceive(inputs, outputs, batchN)
+    // sigmas[sample * outputsN + out] are replaced with deltas, upSigmas[sample * inputsN + in] are calculated
+    // if upSigmas is not null
+    void accumulate(float[] inputs, float[] outputs, float[] sigmas, float[] upSigmas, float[] gradients, int batchN) {
+        for (int n = 0; n < batchN * outputsN; n++) {
+            sigmas[n] *= outputs[n] * (1 - outputs[n]); // delta = sigma * out * (1 - out)
+        }
+        for (int in = 0; in < inputsN; in++) {
+            int offset = in * outputsN;
+            for (int sample = 0; sample < batchN; sample++) {
+                int outOffset = sample * outputsN;
+                // upSigma = sum(delta * weight)
+                if (upSigmas != null) {
+                    float sum = 0;
+                    for (int out = 0; out < outputsN; out++) {
+                        sum += sigmas[outOffset + out] * weights[offset + out];
+                    }
+                    upSigmas[sample * inputsN + in] = sum;
+                }
+                // dError/dWeight = delta * input
+                float value = inputs[sample * inputsN + in];
+                for (int out = 0; out < outputsN; out++) {
+                    gradients[offset + out] += sigmas[outOffset + out] * value;
+                }
+            }
+        }
+    }
+
+    // Apply accumulated gradients, weight = weight - alpha * gradient
+    void update(float[] gradients, float alpha) {
+        for (int n = 0; n < inputsN * outputsN; n++) {
+            weights[n] -= alpha * gradients[n];
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,148 @@
+// Policy of the random games: for each possible move plays rollouts till loose or maxDepth moves,
+// chooses the move with the max average sum of 2^n of all cells at the end
+// rollouts run in rounds in the pool, each round plays rolloutsN / ROUNDS rollouts of each move in parallel
+// search stops after rolloutsN rollouts of each move, after nanosPerMove
+// or if the best move is better then each other by more then DOMINANCE standard errors
+package space.aqoleg.neurogame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.random.RandomGenerator;
+
+class MonteCarlo implements Policy {
+    private static final int ROUNDS = 8;
+    private static final double DOMINANCE = 3;
+    private final ForkJoinPool pool;
+    private final int rolloutsN;
+    private final int maxDepth;
+    private final long nanosPerMove;
+    private final Function<RandomGenerator, Policy> rolloutPolicies; // policy of the rollout from its random
+    private final SplittableRandom random; // split for each task
+    private final int[] counts = new int[4]; // [direction] count of rollouts
+    private final double[] sums = new double[4]; // [direction] sum of the results
+    private final double[] squares = new double[4]; // [direction] sum of the squares of the results
+
+    // rolloutsN - max rollouts of each move, rolloutsN >= ROUNDS, maxDepth - max moves of each rollout
+    MonteCarlo(ForkJoinPool pool, int rolloutsN, int maxDepth, long nanosPerMove,
+               Function<RandomGenerator, Policy> rolloutPolicies, long seed) throws ExceptionInInitializerError {
+        if (rolloutsN < ROUNDS) {
+            throw new ExceptionInInitializerError("rolloutsN < " + ROUNDS);
+        }
+        this.pool = pool;
+        this.rolloutsN = rolloutsN;
+        this.maxDepth = maxDepth;
+        this.nanosPerMove = nanosPerMove;
+        this.rolloutPolicies = rolloutPolicies;
+        random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public int getDirection(Field field) {
+        long deadline = System.nanoTime() + nanosPerMove;
+        int possibleN = 0;
+        int answer = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            counts[direction] = 0;
+            sums[direction] = 0;
+            squares[direction] = 0;
+            if (field.isPossible(direction)) {
+                possibleN++;
+                answer = direction;
+            }
+        }
+        if (possibleN < 2) {
+            return answer;
+        }
+        long board = field.getBoard();
+        int roundRolloutsN = rolloutsN / ROUNDS;
+        int tasksN = Math.max(1, Math.min(pool.getParallelism() / possibleN, roundRolloutsN));
+        for (int round = 0; round < ROUNDS; round++) {
+            // tasks for each possible direction, each task plays its part of the round
+            List<Rollouts> tasks = new ArrayList<>();
+            for (int direction = 0; direction < 4; direction++) {
+                if (field.isPossible(direction)) {
+                    for (int taskN = 0; taskN < tasksN; taskN++) {
+                        int taskRolloutsN = roundRolloutsN / tasksN + (taskN < roundRolloutsN % tasksN ? 1 : 0);
+                        tasks.add(new Rollouts(board, direction, taskRolloutsN, random.split()));
+                    }
+                }
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            for (Rollouts task : tasks) {
+                counts[task.direction] += task.rolloutsN;
+                sums[task.direction] += task.sum;
+                squares[task.direction] += task.squares;
+            }
+            answer = getBest(-1);
+            if (System.nanoTime() >= deadline || isDominant(answer)) {
+                break;
+            }
+        }
+        return answer;
+    }
+
+    // Return direction with max average except this direction, -1 if there is no such direction
+    private int getBest(int exceptDirection) {
+        int best = -1;
+        for (int direction = 0; direction < 4; direction++) {
+            if (direction != exceptDirection && counts[direction] > 0
+                    && (best < 0 || sums[direction] / counts[direction] > sums[best] / counts[best])) {
+                best = direction;
+            }
+        }
+        return best;
+    }
+
+    // Return true if the average of this direction is more then the second average by DOMINANCE standard errors
+    private boolean isDominant(int direction) {
+        int second = getBest(direction);
+        double difference = sums[direction] / counts[direction] - sums[second] / counts[second];
+        double error = Math.sqrt(getVariance(direction) / counts[direction] + getVariance(second) / counts[second]);
+        return difference > DOMINANCE * error;
+    }
+
+    private double getVariance(int direction) {
+        double average = sums[direction] / counts[direction];
+        return Math.max(0, squares[direction] / counts[direction] - average * average);
+    }
+
+    // Play rolloutsN rollouts from the move of the board in this direction, sum their results
+    @SuppressWarnings("serial")
+    private class Rollouts extends RecursiveTask<Void> {
+        private final long board;
+        private final int direction;
+        private final int rolloutsN;
+        private final RandomGenerator random;
+        private double sum;
+        private double squares;
+
+        private Rollouts(long board, int direction, int rolloutsN, RandomGenerator random) {
+            this.board = board;
+            this.direction = direction;
+            this.rolloutsN = rolloutsN;
+            this.random = random;
+        }
+
+        @Override
+        protected Void compute() {
+            Field field = new Field(random);
+            Policy policy = rolloutPolicies.apply(random);
+            for (int rollout = 0; rollout < rolloutsN; rollout++) {
+                field.load(board);
+                field.play(direction);
+                for (int depth = 0; depth < maxDepth && !field.areLoose(); depth++) {
+                    field.play(policy.getDirection(field));
+                }
+                double result = Board.getSum(field.getBoard());
+                sum += result;
+                squares += result * result;
+            }
+            return null;
+        }
+    }
+}
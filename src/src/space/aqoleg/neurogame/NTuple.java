@@ -0,0 +1,207 @@
+// N-tuple network, evaluator and policy with the lookup tables instead of the neurons
+// value of the field is the sum of the weights of each tuple of cells in all 8 symmetric fields,
+// weight is taken from the table of the tuple by index = sum(cell[i] << 4 * i), cell[i] - cell number tuple[i]
+// value is the expected game points till the end, it is learned with temporal difference after each move:
+// value(field) += alpha * (points of the next move + value(next field) - value(field))
+// evaluation does not change anything and can be shared between threads, learning can not
+package space.aqoleg.neurogame;
+
+import java.io.*;
+
+public class NTuple implements Evaluator, Policy {
+    // rows and squares, 5 tables of 65536 weights
+    private static final int[][] TUPLES = {{0, 1, 2, 3}, {4, 5, 6, 7}, {0, 1, 4, 5}, {1, 2, 5, 6}, {5, 6, 9, 10}};
+    private final int[][] tuples; // [tupleN][i] cell numbers
+    private final float[][] weights; // [tupleN][index]
+
+    private NTuple(int[][] tuples) {
+        this.tuples = tuples;
+        weights = new float[tuples.length][];
+        for (int tupleN = 0; tupleN < tuples.length; tupleN++) {
+            weights[tupleN] = new float[1 << (tuples[tupleN].length << 2)];
+        }
+    }
+
+    // Learn games: java -cp neurogame.jar space.aqoleg.neurogame.NTuple [games]
+    // weights are loaded from and saved to the file neurogame.nt near the file of the game
+    public static void main(String[] args) {
+        int gamesN = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        File file = new File(new File(System.getProperty("user.home"), "Documents"), "neurogame.nt");
+        NTuple nTuple = getNTuple();
+        if (file.exists() && !nTuple.load(file)) {
+            System.out.println("Can not load " + file.getPath());
+            return;
+        }
+        Field field = new Field();
+        long points = 0;
+        for (int game = 1; game <= gamesN; game++) {
+            points += nTuple.learn(field, 0.0025f);
+            if (game % 1000 == 0) {
+                System.out.println("games " + game + ", average points " + points / 1000);
+                points = 0;
+            }
+        }
+        if (nTuple.save(file)) {
+            System.out.println("Saved in " + file.getPath());
+        }
+    }
+
+    static NTuple getNTuple() {
+        return getNTuple(TUPLES);
+    }
+
+    // Create with zero weights
+    // tuples - cell numbers of each tuple, 0 < tuple.length <= 6
+    static NTuple getNTuple(int[][] tuples) throws ExceptionInInitializerError {
+        if (tuples.length == 0) {
+            throw new ExceptionInInitializerError("tuples.length == 0");
+        }
+        for (int[] tuple : tuples) {
+            if (tuple.length == 0 || tuple.length > 6) {
+                throw new ExceptionInInitializerError("tuple.length == 0 or tuple.length > 6");
+            }
+            for (int cellN : tuple) {
+                if (cellN < 0 || cellN > 15) {
+                    throw new ExceptionInInitializerError("cellN < 0 or cellN > 15");
+                }
+            }
+        }
+        return new NTuple(tuples.clone());
+    }
+
+    // Save weights to file, return true if OK
+    boolean save(File file) {
+        try {
+            DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            save(stream);
+            stream.close();
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    // Load weights from file, return true if OK
+    boolean load(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            load(stream);
+            stream.close();
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    // Save weights to stream
+    void save(DataOutputStream stream) throws IOException {
+        for (float[] tupleWeights : weights) {
+            for (float weight : tupleWeights) {
+                stream.writeFloat(weight);
+            }
+        }
+    }
+
+    // Load weights from stream
+    void load(DataInputStream stream) throws IOException {
+        for (float[] tupleWeights : weights) {
+            for (int index = 0; index < tupleWeights.length; index++) {
+                tupleWeights[index] = stream.readFloat();
+            }
+        }
+    }
+
+    // Return value of the field packed into Board long
+    float getValue(long field) {
+        float value = 0;
+        for (int symmetryN = 0; symmetryN < 8; symmetryN++) {
+            long symmetricField = getSymmetric(field, symmetryN);
+            for (int tupleN = 0; tupleN < tuples.length; tupleN++) {
+                value += weights[tupleN][getIndex(symmetricField, tuples[tupleN])];
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public float evaluate(long nextField, int score) {
+        return getValue(nextField);
+    }
+
+    // Return possible direction with max points + value of the next field
+    @Override
+    public int getDirection(Field field) {
+        long board = field.getBoard();
+        int answer = 0;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int direction = 0; direction < 4; direction++) {
+            if (field.isPossible(direction)) {
+                float value = Board.getPoints(board, direction) + getValue(Board.move(board, direction));
+                if (value > max) {
+                    max = value;
+                    answer = direction;
+                }
+            }
+        }
+        return answer;
+    }
+
+    // Start field, play it till loose with getDirection, learn after each move
+    // alpha - learning rate for each weight, return game points
+    int learn(Field field, float alpha) {
+        field.start();
+        int points = 0;
+        long lastField = 0; // field after the last move, 0 before the first move
+        while (!field.areLoose()) {
+            int direction = getDirection(field);
+            long board = field.getBoard();
+            int movePoints = Board.getPoints(board, direction);
+            long nextField = Board.move(board, direction);
+            if (lastField != 0) {
+                update(lastField, alpha * (movePoints + getValue(nextField) - getValue(lastField)));
+            }
+            points += movePoints;
+            lastField = nextField;
+            field.play(direction);
+        }
+        if (lastField != 0) {
+            update(lastField, -alpha * getValue(lastField)); // no points after loose
+        }
+        return points;
+    }
+
+    // Add delta to each weight of the field
+    private void update(long field, float delta) {
+        for (int symmetryN = 0; symmetryN < 8; symmetryN++) {
+            long symmetricField = getSymmetric(field, symmetryN);
+            for (int tupleN = 0; tupleN < tuples.length; tupleN++) {
+                weights[tupleN][getIndex(symmetricField, tuples[tupleN])] += delta;
+            }
+        }
+    }
+
+    // Return one of 8 rotations and reflections, 0 is the field itself
+    private static long getSymmetric(long field, int symmetryN) {
+        if (symmetryN >= 4) {
+            field = Board.transpose(field);
+        }
+        if ((symmetryN & 1) != 0) {
+            field = Board.mirror(field);
+        }
+        if ((symmetryN & 2) != 0) {
+            field = Board.flip(field);
+        }
+        return field;
+    }
+
+    private static int getIndex(long field, int[] tuple) {
+        int index = 0;
+        for (int i = 0; i < tuple.length; i++) {
+            index |= Board.getCell(field, tuple[i]) << (i << 2);
+        }
+        return index;
+    }
+}
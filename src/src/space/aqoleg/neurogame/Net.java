@@ -1,23 +1,45 @@
 // 2 or more connected layers, 1 output
+// weights are read by many threads at once, each thread perceives in its own activations
+// learning changes weights and must not run with the other threads,
+// the other net can learn in the background and replace all weights of this net at once with setWeights
 package space.aqoleg.neurogame;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.random.RandomGenerator;
+import java.util.zip.CRC32;
 
 class Net {
+    // model format, all numbers are little endian:
+    // int MAGIC, int VERSION, int sigmoid, int map.length, int map[], int crc32 of the weights,
+    // zeros till the multiple of ALIGNMENT bytes, then weights of each layer in the order of Layer,
+    // weights of each layer start at the multiple of ALIGNMENT bytes, the rest of the bytes are zero
+    static final int MAGIC = 0x544E474E; // "NGNT"
+    static final int VERSION = 1;
+    private static final int ALIGNMENT = 64;
     private static final float THRESHOLD = 0.01f; // stop to learn when Math.abs(sigma) <= THRESHOLD
-    private final Layer[] layers; // layers[0] - input
-    private final float[] output;
-    private final float[] sigma;
+    private final int[] map;
+    private volatile Layer[] layers; // layers[0] - input, read once for each perceive
+    private final ThreadLocal<Activations> activations; // workspace of each thread, grows for bigger batches
+    private int sigmoid = Sigmoid.EXACT;
+    private Optimizer optimizer; // rule of update, its state is next to the weights
+    private final AtomicLong version = new AtomicLong(); // increments after each change of the answers
 
-    private Net(Layer[] layers, float[] output, float[] sigma) {
+    private Net(int[] map, Layer[] layers) {
+        this.map = map;
         this.layers = layers;
-        this.output = output;
-        this.sigma = sigma;
+        activations = ThreadLocal.withInitial(() -> new Activations(map, 1));
+        optimizer = Optimizer.getOptimizer(Optimizer.SGD, getGradientsSizes());
     }
 
-    // Create and connect layers
+    // Create layers
     // map - number of neurons in each layer from first
     static Net getNet(int[] map) throws ExceptionInInitializerError {
         if (map.length < 2) {
@@ -29,33 +51,178 @@ class Net {
             }
         }
         // layers order:
-        // input[map[0]] - layers[0] - inputs[0][map[1]] - layers[1] - (inputs[1][map[2]] - ... - layers[n]) - output
-        //               - layers[0] - sigmas[0][map[1]] - layers[1] - (sigmas[1][map[2]] - ... - layers[n]) - outSigma
+        // input[map[0]] - layers[0] - outputs[0][map[1]] - layers[1] - (outputs[1][map[2]] - ... - layers[n]) - answer
+        // outputs and sigmas between the layers are in the activations of each thread
         Layer[] layers = new Layer[map.length];
-        float[] output = new float[1];
-        float[] outSigma = new float[1];
-        float[][] inputs = new float[layers.length - 1][];
-        float[][] sigmas = new float[layers.length - 1][];
-        for (int n = 0; n < inputs.length; n++) {
-            inputs[n] = new float[map[n + 1]];
-            sigmas[n] = new float[map[n + 1]];
+        for (int layerN = 0; layerN < layers.length; layerN++) {
+            layers[layerN] = Layer.getLayer(map[layerN], layerN == layers.length - 1 ? 1 : map[layerN + 1]);
         }
-        // first layer
-        layers[0] = Layer.getFirstLayer(map[0], inputs[0], sigmas[0]);
-        // middle layers
-        for (int layerN = 1; layerN < layers.length - 1; layerN++) {
-            layers[layerN] = Layer.getLayer(inputs[layerN - 1], inputs[layerN], sigmas[layerN - 1], sigmas[layerN]);
-        }
-        // last layer
-        layers[layers.length - 1] = Layer.getLayer(inputs[layers.length - 2], output, sigmas[layers.length - 2], outSigma);
-        return new Net(layers, output, outSigma);
+        return new Net(map.clone(), layers);
     }
 
     // Initialize each layer
     void initialize() {
+        initialize(new SplittableRandom());
+    }
+
+    // Initialize each layer from this random, the same seeded random gives the same weights
+    void initialize(RandomGenerator random) {
         for (Layer layer : layers) {
-            layer.initialize();
+            layer.initialize(random);
+        }
+        version.incrementAndGet();
+    }
+
+    // Return new net with the same map, weights, sigmoid and optimizer with its state
+    Net copy() {
+        Net net = getNet(map);
+        net.setSigmoid(sigmoid);
+        net.optimizer = optimizer.copy();
+        for (int layerN = 0; layerN < layers.length; layerN++) {
+            net.layers[layerN].copy(layers[layerN]);
+        }
+        return net;
+    }
+
+    // Replace weights, sigmoid and optimizer with the copy of them from the net with the same map at once,
+    // each perceive of the other threads answers with all old or all new weights
+    // return false if the map is other
+    boolean setWeights(Net net) {
+        if (!Arrays.equals(map, net.map)) {
+            return false;
+        }
+        Net copy = net.copy();
+        sigmoid = copy.sigmoid;
+        optimizer = copy.optimizer;
+        layers = copy.layers;
+        version.incrementAndGet();
+        return true;
+    }
+
+    // Return version of the weights and sigmoid, it changes after each change of the answers
+    // answers calculated after the reading of the version are valid while it is the same
+    long getVersion() {
+        return version.get();
+    }
+
+    // Return number of bytes of the model format
+    int getModelSize() {
+        int size = align(4 * (5 + map.length));
+        for (Layer layer : layers) {
+            size += align(4 * layer.getWeightsN());
+        }
+        return size;
+    }
+
+    // Put the model format of the net into buffer with getModelSize() remaining bytes
+    void save(ByteBuffer buffer) {
+        Layer[] layers = this.layers;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int start = buffer.position();
+        int end = start + getModelSize();
+        for (int position = start; position < end; position++) {
+            buffer.put(position, (byte) 0); // padding
+        }
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(sigmoid).putInt(map.length);
+        for (int value : map) {
+            buffer.putInt(value);
+        }
+        int crcPosition = buffer.position();
+        int weightsStart = start + align(crcPosition + 4 - start);
+        int layerStart = weightsStart;
+        for (Layer layer : layers) {
+            buffer.position(layerStart);
+            layer.save(buffer.asFloatBuffer());
+            layerStart += align(4 * layer.getWeightsN());
+        }
+        buffer.putInt(crcPosition, getCrc(buffer, weightsStart, end));
+        buffer.position(end);
+    }
+
+    // Load the model format from buffer, each layer is copied at once
+    // sigmoid is taken from the buffer, buffer is checked before the weights change
+    // throw IOException if it is not the model of the net with this map or checksum is wrong
+    void load(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int start = buffer.position();
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+            throw new IOException("not a model");
         }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("version " + version);
+        }
+        int sigmoid = buffer.getInt();
+        if (!Sigmoid.isCorrect(sigmoid)) {
+            throw new IOException("sigmoid " + sigmoid);
+        }
+        int layersN = buffer.getInt();
+        if (layersN != map.length || buffer.remaining() < 4 * (layersN + 1)) {
+            throw new IOException("map length " + layersN);
+        }
+        for (int value : map) {
+            if (buffer.getInt() != value) {
+                throw new IOException("other map");
+            }
+        }
+        int crc = buffer.getInt();
+        int end = start + getModelSize();
+        if (buffer.limit() < end) {
+            throw new IOException("end of the model");
+        }
+        int weightsStart = start + align(buffer.position() - start);
+        if (getCrc(buffer, weightsStart, end) != crc) {
+            throw new IOException("checksum");
+        }
+        for (Layer layer : layers) {
+            buffer.position(weightsStart);
+            layer.load(buffer.asFloatBuffer());
+            weightsStart += align(4 * layer.getWeightsN());
+        }
+        setSigmoid(sigmoid);
+        buffer.position(end);
+    }
+
+    // Return inference only copy of the net with 8 bit weights, see QuantizedNet
+    QuantizedNet quantize() {
+        return new QuantizedNet(map, layers);
+    }
+
+    // Set implementation of the activation function of each layer, see Sigmoid
+    boolean setSigmoid(int sigmoid) {
+        if (!Sigmoid.isCorrect(sigmoid)) {
+            return false;
+        }
+        this.sigmoid = sigmoid;
+        for (Layer layer : layers) {
+            layer.setSigmoid(sigmoid);
+        }
+        version.incrementAndGet();
+        return true;
+    }
+
+    // Set rule of update for the next learning with new state, see Optimizer
+    // return false if incorrect type
+    boolean setOptimizer(int type) {
+        if (!Optimizer.isCorrect(type)) {
+            return false;
+        }
+        optimizer = Optimizer.getOptimizer(type, getGradientsSizes());
+        return true;
+    }
+
+    int getOptimizer() {
+        return optimizer.getType();
+    }
+
+    // Save type and state of the optimizer to stream, so that the learning can be continued after loadOptimizer
+    void saveOptimizer(DataOutputStream stream) throws IOException {
+        optimizer.save(stream);
+    }
+
+    // Load type and state of the optimizer from stream
+    void loadOptimizer(DataInputStream stream) throws IOException {
+        optimizer = Optimizer.load(stream, getGradientsSizes());
     }
 
     // Save weights to stream
@@ -70,43 +237,195 @@ class Net {
         for (Layer layer : layers) {
             layer.load(stream);
         }
+        version.incrementAndGet();
     }
 
-    // Perceive this input
+    // Perceive this input, can be called from many threads at once
     // return output or 0 if incorrect input
     float getAnswer(float[] inputs) {
-        if (layers[0].setInput(inputs)) {
-            // perceive from input to output
-            for (Layer layer : layers) {
-                layer.perceive();
+        if (inputs.length != map[0]) {
+            return 0;
+        }
+        Activations activations = getThreadActivations(1);
+        perceive(inputs, activations, 1);
+        return activations.outputs[layers.length - 1][0];
+    }
+
+    // Perceive all inputs at once, answers[n] is the output for inputs[n], can be called from many threads at once
+    // each layer reads its weights once for the whole batch
+    // return false if incorrect inputs
+    boolean getAnswers(float[][] inputs, float[] answers) {
+        int batchN = inputs.length;
+        if (answers.length < batchN) {
+            return false;
+        }
+        Activations activations = getThreadActivations(batchN);
+        if (!perceive(inputs, 0, batchN, activations)) {
+            return false;
+        }
+        System.arraycopy(activations.outputs[layers.length - 1], 0, answers, 0, batchN);
+        return true;
+    }
+
+    // Learn all inputs with targets once in mini-batches of batchSize
+    // gradients of the batch are accumulated, divided by the number of inputs in the batch and applied at once
+    // return mean error 0.5 * (target - output)^2 before learning or -1 if incorrect inputs
+    float learn(float[][] inputs, float[] targets, float alpha, int batchSize) {
+        if (batchSize < 1 || !areCorrect(inputs, targets)) {
+            return -1;
+        }
+        Activations activations = getThreadActivations(Math.min(batchSize, inputs.length));
+        double error = 0;
+        for (int first = 0; first < inputs.length; first += batchSize) {
+            int batchN = Math.min(batchSize, inputs.length - first);
+            error += accumulate(inputs, targets, first, batchN, activations);
+            update(activations.getGradients(), batchN, alpha);
+        }
+        return (float) (error / inputs.length);
+    }
+
+    // Return true if there is a target for each input and each input has map[0] values
+    boolean areCorrect(float[][] inputs, float[] targets) {
+        if (targets.length != inputs.length) {
+            return false;
+        }
+        for (float[] input : inputs) {
+            if (input.length != map[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Return new activations for batchN inputs
+    Activations getActivations(int batchN) {
+        return new Activations(map, batchN);
+    }
+
+    // Perceive batchN correct inputs from the first in activations for at least batchN inputs,
+    // replace gradients of activations with the sum of dError/dWeight of these inputs without changing weights
+    // return sum of errors 0.5 * (target - output)^2
+    double accumulate(float[][] inputs, float[] targets, int first, int batchN, Activations activations) {
+        perceive(inputs, first, batchN, activations);
+        int last = layers.length - 1;
+        double error = 0;
+        // calculate sigma
+        for (int sample = 0; sample < batchN; sample++) {
+            float sigma = activations.outputs[last][sample] - targets[first + sample];
+            error += 0.5 * sigma * sigma;
+            activations.sigmas[last][sample] = sigma;
+        }
+        // learn from output to input
+        float[][] gradients = activations.getGradients();
+        for (int layerN = last; layerN >= 0; layerN--) {
+            Arrays.fill(gradients[layerN], 0);
+            layers[layerN].accumulate(layerN == 0 ? activations.input : activations.outputs[layerN - 1],
+                    activations.outputs[layerN], activations.sigmas[layerN],
+                    layerN == 0 ? null : activations.sigmas[layerN - 1], gradients[layerN], batchN);
+        }
+        return error;
+    }
+
+    // Change weights of each layer with the optimizer, gradients - Activations.getGradients() summed over batchN inputs,
+    // the optimizer gets the mean gradients and replaces them with the steps, with SGD weight = weight - alpha * gradient
+    void update(float[][] gradients, int batchN, float alpha) {
+        optimizer.nextStep();
+        float rate = alpha * optimizer.getRate();
+        for (int layerN = 0; layerN < layers.length; layerN++) {
+            for (int n = 0; n < gradients[layerN].length; n++) {
+                gradients[layerN][n] /= batchN;
             }
-            return output[0];
+            optimizer.getSteps(layerN, gradients[layerN]);
+            layers[layerN].update(gradients[layerN], rate);
         }
-        return 0;
+        version.incrementAndGet();
     }
 
     // Learn with this inputs, target and alpha count times or till |sigma| > threshold
     // return count of learning or 0 if incorrect input
     int learn(float[] inputs, float target, float alpha, int count, float threshold) {
-        if (layers[0].setInput(inputs)) {
-            for (int i = 0; i < count; i++) {
-                // perceive from input to output
-                for (Layer layer : layers) {
-                    layer.perceive();
-                }
-                // calculate sigma
-                float sigma = output[0] - target;
-                if (Math.abs(sigma) <= threshold) {
-                    return i;
-                }
-                this.sigma[0] = sigma;
-                // learn from output to input
-                for (int layerN = layers.length - 1; layerN >= 0; layerN--) {
-                    layers[layerN].learn(alpha);
+        if (inputs.length != map[0]) {
+            return 0;
+        }
+        Activations activations = getThreadActivations(1);
+        int last = layers.length - 1;
+        for (int i = 0; i < count; i++) {
+            perceive(inputs, activations, 1);
+            // calculate sigma
+            float sigma = activations.outputs[last][0] - target;
+            if (Math.abs(sigma) <= threshold) {
+                if (i > 0) {
+                    version.incrementAndGet();
                 }
+                return i;
+            }
+            activations.sigmas[last][0] = sigma;
+            // learn from output to input
+            for (int layerN = last; layerN >= 0; layerN--) {
+                layers[layerN].learn(layerN == 0 ? inputs : activations.outputs[layerN - 1],
+                        activations.outputs[layerN], activations.sigmas[layerN],
+                        layerN == 0 ? null : activations.sigmas[layerN - 1], alpha);
+            }
+        }
+        if (count > 0) {
+            version.incrementAndGet();
+        }
+        return count;
+    }
+
+    // Return length of the gradients of each layer
+    private int[] getGradientsSizes() {
+        int[] sizes = new int[layers.length];
+        for (int layerN = 0; layerN < layers.length; layerN++) {
+            sizes[layerN] = layers[layerN].getWeightsN() - getOutputsN(layerN);
+        }
+        return sizes;
+    }
+
+    private int getOutputsN(int layerN) {
+        return layerN == map.length - 1 ? 1 : map[layerN + 1];
+    }
+
+    // Return crc32 of the bytes of buffer from start to end - 1
+    private static int getCrc(ByteBuffer buffer, int start, int end) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().limit(end).position(start));
+        return (int) crc.getValue();
+    }
+
+    // Return size rounded up to the multiple of ALIGNMENT
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    // Return activations of this thread for at least batchN inputs
+    private Activations getThreadActivations(int batchN) {
+        Activations activations = this.activations.get();
+        if (activations.batchN < batchN) {
+            activations = new Activations(map, batchN);
+            this.activations.set(activations);
+        }
+        return activations;
+    }
+
+    // Copy batchN inputs from the first into the activations and perceive them, return false if incorrect inputs
+    private boolean perceive(float[][] inputs, int first, int batchN, Activations activations) {
+        for (int sample = 0; sample < batchN; sample++) {
+            if (inputs[first + sample].length != map[0]) {
+                return false;
             }
-            return count;
+            System.arraycopy(inputs[first + sample], 0, activations.input, sample * map[0], map[0]);
+        }
+        perceive(activations.input, activations, batchN);
+        return true;
+    }
+
+    // Perceive batchN inputs[sample * map[0] + in] from input to output
+    private void perceive(float[] inputs, Activations activations, int batchN) {
+        Layer[] layers = this.layers;
+        for (int layerN = 0; layerN < layers.length; layerN++) {
+            layers[layerN].perceive(inputs, activations.outputs[layerN], batchN);
+            inputs = activations.outputs[layerN];
         }
-        return 0;
     }
-}
\ No newline at end of file
+}
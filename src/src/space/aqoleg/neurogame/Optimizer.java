@@ -0,0 +1,158 @@
+// Rule to change weights of the net with the gradients of the mini-batch, keeps its state for each weight
+// SGD: weight = weight - alpha * gradient
+// MOMENTUM: velocity = MU * velocity + gradient, weight = weight - alpha * velocity
+// NESTEROV: velocity = MU * velocity + gradient, weight = weight - alpha * (gradient + MU * velocity)
+// ADAM: m = B1 * m + (1 - B1) * gradient, v = B2 * v + (1 - B2) * gradient^2,
+// weight = weight - alpha * ADAM_RATE * (m / (1 - B1^step)) / (sqrt(v / (1 - B2^step)) + EPSILON)
+// steps of adam do not depend on the size of the gradients, ADAM_RATE lets it use alpha of SGD
+package space.aqoleg.neurogame;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+class Optimizer {
+    static final int SGD = 0;
+    static final int MOMENTUM = 1;
+    static final int NESTEROV = 2;
+    static final int ADAM = 3;
+    private static final float MU = 0.9f;
+    private static final float B1 = 0.9f;
+    private static final float B2 = 0.999f;
+    private static final float EPSILON = 1e-8f;
+    private static final float ADAM_RATE = 0.01f; // steps of adam are about 1
+    private final int type;
+    private final float[][] firsts; // [layerN][n] velocity or m of each weight of the gradients, null for SGD
+    private final float[][] seconds; // [layerN][n] v of each weight of the gradients, null if not ADAM
+    private long step; // number of updates
+
+    // sizes - length of the gradients of each layer
+    private Optimizer(int type, int[] sizes) {
+        this.type = type;
+        firsts = type == SGD ? null : new float[sizes.length][];
+        seconds = type == ADAM ? new float[sizes.length][] : null;
+        for (int layerN = 0; layerN < sizes.length; layerN++) {
+            if (firsts != null) {
+                firsts[layerN] = new float[sizes[layerN]];
+            }
+            if (seconds != null) {
+                seconds[layerN] = new float[sizes[layerN]];
+            }
+        }
+    }
+
+    // Create with zero state
+    static Optimizer getOptimizer(int type, int[] sizes) throws ExceptionInInitializerError {
+        if (!isCorrect(type)) {
+            throw new ExceptionInInitializerError("incorrect type " + type);
+        }
+        return new Optimizer(type, sizes);
+    }
+
+    // Return true if the rule exists
+    static boolean isCorrect(int type) {
+        return type == SGD || type == MOMENTUM || type == NESTEROV || type == ADAM;
+    }
+
+    int getType() {
+        return type;
+    }
+
+    // Return new optimizer with the same type and state
+    Optimizer copy() {
+        Optimizer optimizer = new Optimizer(type, getSizes());
+        optimizer.step = step;
+        for (int layerN = 0; firsts != null && layerN < firsts.length; layerN++) {
+            System.arraycopy(firsts[layerN], 0, optimizer.firsts[layerN], 0, firsts[layerN].length);
+            if (seconds != null) {
+                System.arraycopy(seconds[layerN], 0, optimizer.seconds[layerN], 0, seconds[layerN].length);
+            }
+        }
+        return optimizer;
+    }
+
+    // Save type and state to stream
+    void save(DataOutputStream stream) throws IOException {
+        stream.writeInt(type);
+        stream.writeLong(step);
+        for (int layerN = 0; firsts != null && layerN < firsts.length; layerN++) {
+            for (float value : firsts[layerN]) {
+                stream.writeFloat(value);
+            }
+            if (seconds != null) {
+                for (float value : seconds[layerN]) {
+                    stream.writeFloat(value);
+                }
+            }
+        }
+    }
+
+    // Return optimizer with the type and state from stream, sizes - length of the gradients of each layer
+    static Optimizer load(DataInputStream stream, int[] sizes) throws IOException {
+        int type = stream.readInt();
+        if (!isCorrect(type)) {
+            throw new IOException("incorrect optimizer " + type);
+        }
+        Optimizer optimizer = new Optimizer(type, sizes);
+        optimizer.step = stream.readLong();
+        for (int layerN = 0; optimizer.firsts != null && layerN < sizes.length; layerN++) {
+            for (int n = 0; n < sizes[layerN]; n++) {
+                optimizer.firsts[layerN][n] = stream.readFloat();
+            }
+            for (int n = 0; optimizer.seconds != null && n < sizes[layerN]; n++) {
+                optimizer.seconds[layerN][n] = stream.readFloat();
+            }
+        }
+        return optimizer;
+    }
+
+    // Start the next update, call once before getSteps of all layers
+    void nextStep() {
+        step++;
+    }
+
+    // Replace gradients of the layer with the steps, weight = weight - alpha * getRate() * step
+    void getSteps(int layerN, float[] gradients) {
+        switch (type) {
+            case MOMENTUM:
+            case NESTEROV:
+                float[] velocities = firsts[layerN];
+                for (int n = 0; n < gradients.length; n++) {
+                    velocities[n] = MU * velocities[n] + gradients[n];
+                    gradients[n] = type == MOMENTUM ? velocities[n] : gradients[n] + MU * velocities[n];
+                }
+                break;
+            case ADAM:
+                float[] m = firsts[layerN];
+                float[] v = seconds[layerN];
+                float correction1 = (float) (1 - Math.pow(B1, step));
+                float correction2 = (float) (1 - Math.pow(B2, step));
+                for (int n = 0; n < gradients.length; n++) {
+                    m[n] = B1 * m[n] + (1 - B1) * gradients[n];
+                    v[n] = B2 * v[n] + (1 - B2) * gradients[n] * gradients[n];
+                    gradients[n] = (m[n] / correction1) / ((float) Math.sqrt(v[n] / correction2) + EPSILON);
+                }
+                break;
+            default:
+        }
+    }
+
+    // Return multiplier of alpha for this rule
+    float getRate() {
+        switch (type) {
+            case ADAM:
+                return ADAM_RATE;
+            default:
+                return 1;
+        }
+    }
+
+    private int[] getSizes() {
+        float[][] arrays = firsts == null ? new float[0][] : firsts;
+        int[] sizes = new int[arrays.length];
+        for (int layerN = 0; layerN < arrays.length; layerN++) {
+            sizes[layerN] = arrays[layerN].length;
+        }
+        return sizes;
+    }
+}
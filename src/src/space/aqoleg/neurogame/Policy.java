@@ -0,0 +1,44 @@
+// Choice of the move for the field, one policy plays one game at a time
+package space.aqoleg.neurogame;
+
+import java.util.random.RandomGenerator;
+
+interface Policy {
+
+    // Return random possible direction
+    static Policy getRandom(RandomGenerator random) {
+        return field -> {
+            int possibleN = 0;
+            for (int direction = 0; direction < 4; direction++) {
+                if (field.isPossible(direction)) {
+                    possibleN++;
+                }
+            }
+            int possibleToPlay = random.nextInt(possibleN);
+            for (int direction = 0; direction < 4; direction++) {
+                if (field.isPossible(direction) && possibleToPlay-- == 0) {
+                    return direction;
+                }
+            }
+            return 0;
+        };
+    }
+
+    // Return possible direction with max field scores
+    static Policy getGreedy() {
+        return field -> {
+            int answer = 0;
+            int max = -1;
+            for (int direction = 0; direction < 4; direction++) {
+                if (field.getScore(direction) > max) {
+                    max = field.getScore(direction);
+                    answer = direction;
+                }
+            }
+            return answer;
+        };
+    }
+
+    // Return direction for this field, field is not loose
+    int getDirection(Field field);
+}
@@ -0,0 +1,78 @@
+// Append-only file of the recorded moves, it can be bigger than the memory
+// file: int MAGIC, int VERSION, then positions in the format of the ReplayBuffer,
+// moves are appended through the small buffer and read in chunks, broken last position is overwritten
+// one thread appends, the other threads can read the flushed positions at the same time
+package space.aqoleg.neurogame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+class PositionLog implements Closeable {
+    static final int MAGIC = 0x4C50474E; // "NGPL"
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int WRITE_POSITIONS = 256; // positions of the write buffer
+    private final FileChannel channel;
+    private final ReplayBuffer writeBuffer = new ReplayBuffer(WRITE_POSITIONS, ReplayBuffer.RING, true);
+    private volatile long size; // number of the flushed positions
+
+    // Open file or create it, throw IOException if it is not the log
+    PositionLog(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() == 0) {
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } else {
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                throw new IOException("not a position log");
+            }
+        }
+        size = (channel.size() - HEADER_SIZE) / ReplayBuffer.POSITION_SIZE;
+    }
+
+    // Append position as ReplayBuffer.add, it is written to file with flush or after the other moves
+    synchronized void add(long[] nextFields, int[] scores, int direction) throws IOException {
+        writeBuffer.add(nextFields, scores, direction);
+        if (writeBuffer.size() == WRITE_POSITIONS) {
+            flush();
+        }
+    }
+
+    // Write all added positions to file
+    synchronized void flush() throws IOException {
+        writeBuffer.write(channel, HEADER_SIZE + size * ReplayBuffer.POSITION_SIZE);
+        size += writeBuffer.size();
+        writeBuffer.clear();
+    }
+
+    // Return number of the flushed positions, they can be read
+    long size() {
+        return size;
+    }
+
+    // Replace positions of chunk with the flushed positions from first, up to the capacity of chunk
+    // return number of read positions
+    int read(long first, ReplayBuffer chunk) throws IOException {
+        int positionsN = (int) Math.max(0, Math.min(chunk.getCapacity(), size - first));
+        chunk.read(channel, HEADER_SIZE + first * ReplayBuffer.POSITION_SIZE, positionsN);
+        return positionsN;
+    }
+
+    // Flush and close file
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,135 @@
+// Inference only copy of the net with 8 bit weights and integer accumulation
+// weights of each output are quantized with its own scale: weight = scale[out] * q, -127 <= q <= 127
+// input of each layer is quantized with the scale of its max: input = inputScale * q, |q| <= 32767 (16 bit),
+// or less for the big layers, so that the int sum can not overflow,
+// 8 bit inputs are not enough, answers of the directions are too close and 8 bit net chooses the other move too often
+// net = bias + scale[out] * inputScale * sum(q weight * q input), out is taken from the Sigmoid.TABLE
+// weights take 4 times less memory, it does not learn and can be used from many threads at once
+package space.aqoleg.neurogame;
+
+class QuantizedNet {
+    private final int[] map;
+    private final byte[][] weights; // [layerN][in * outputsN + out], the same order as in Layer without the bias
+    private final float[][] scales; // [layerN][out]
+    private final float[][] biases; // [layerN][out]
+    private final int[] inputMax; // [layerN] max |q input|
+    private final ThreadLocal<Workspace> workspaces;
+
+    // map and layers of the net
+    QuantizedNet(int[] map, Layer[] layers) {
+        this.map = map;
+        weights = new byte[layers.length][];
+        scales = new float[layers.length][];
+        biases = new float[layers.length][];
+        inputMax = new int[layers.length];
+        int maxN = 0;
+        for (int layerN = 0; layerN < layers.length; layerN++) {
+            int inputsN = map[layerN];
+            int outputsN = getOutputsN(layerN);
+            maxN = Math.max(maxN, Math.max(inputsN, outputsN));
+            weights[layerN] = new byte[inputsN * outputsN];
+            scales[layerN] = new float[outputsN];
+            biases[layerN] = new float[outputsN];
+            inputMax[layerN] = Math.min(Short.MAX_VALUE, Integer.MAX_VALUE / 127 / inputsN);
+            for (int out = 0; out < outputsN; out++) {
+                float max = 0;
+                for (int in = 0; in < inputsN; in++) {
+                    max = Math.max(max, Math.abs(layers[layerN].getWeight(in, out)));
+                }
+                float scale = max == 0 ? 1 : max / 127;
+                for (int in = 0; in < inputsN; in++) {
+                    weights[layerN][in * outputsN + out] = (byte) Math.round(layers[layerN].getWeight(in, out) / scale);
+                }
+                scales[layerN][out] = scale;
+                biases[layerN][out] = layers[layerN].getWeight(inputsN, out);
+            }
+        }
+        int workspaceN = maxN;
+        workspaces = ThreadLocal.withInitial(() -> new Workspace(workspaceN));
+    }
+
+    // Perceive this input, return output or 0 if incorrect input
+    float getAnswer(float[] inputs) {
+        if (inputs.length != map[0]) {
+            return 0;
+        }
+        return perceive(inputs, workspaces.get());
+    }
+
+    // Perceive each input, answers[n] is the output for inputs[n], return false if incorrect inputs
+    boolean getAnswers(float[][] inputs, float[] answers) {
+        if (answers.length < inputs.length) {
+            return false;
+        }
+        for (float[] input : inputs) {
+            if (input.length != map[0]) {
+                return false;
+            }
+        }
+        Workspace workspace = workspaces.get();
+        for (int n = 0; n < inputs.length; n++) {
+            answers[n] = perceive(inputs[n], workspace);
+        }
+        return true;
+    }
+
+    // Perceive from input to output, return output
+    private float perceive(float[] inputs, Workspace workspace) {
+        float[] input = inputs;
+        float[] output = workspace.outputs0;
+        for (int layerN = 0; layerN < weights.length; layerN++) {
+            int inputsN = map[layerN];
+            int outputsN = getOutputsN(layerN);
+            // quantize input
+            float max = 0;
+            for (int in = 0; in < inputsN; in++) {
+                max = Math.max(max, Math.abs(input[in]));
+            }
+            float inputScale = max == 0 ? 1 : max / inputMax[layerN];
+            for (int in = 0; in < inputsN; in++) {
+                workspace.input[in] = Math.round(input[in] / inputScale);
+            }
+            // sum input by input as in Layer
+            int[] sums = workspace.sums;
+            byte[] layerWeights = weights[layerN];
+            for (int out = 0; out < outputsN; out++) {
+                sums[out] = 0;
+            }
+            for (int in = 0; in < inputsN; in++) {
+                int value = workspace.input[in];
+                if (value != 0) {
+                    int offset = in * outputsN;
+                    for (int out = 0; out < outputsN; out++) {
+                        sums[out] += layerWeights[offset + out] * value;
+                    }
+                }
+            }
+            for (int out = 0; out < outputsN; out++) {
+                float net = biases[layerN][out] + scales[layerN][out] * inputScale * sums[out];
+                output[out] = Sigmoid.get(Sigmoid.TABLE, net);
+            }
+            input = output;
+            output = output == workspace.outputs0 ? workspace.outputs1 : workspace.outputs0;
+        }
+        return input[0];
+    }
+
+    private int getOutputsN(int layerN) {
+        return layerN == map.length - 1 ? 1 : map[layerN + 1];
+    }
+
+    // Buffers of one thread
+    private static class Workspace {
+        private final int[] input;
+        private final int[] sums;
+        private final float[] outputs0; // outputs of the even layers
+        private final float[] outputs1; // outputs of the odd layers
+
+        private Workspace(int maxN) {
+            input = new int[maxN];
+            sums = new int[maxN];
+            outputs0 = new float[maxN];
+            outputs1 = new float[maxN];
+        }
+    }
+}
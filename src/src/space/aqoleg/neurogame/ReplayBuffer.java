@@ -0,0 +1,173 @@
+// Compact buffer of the recorded positions for learning, up to capacity positions
+// each position is the packed next field and the score of each direction and the direction of the player,
+// POSITION_SIZE bytes instead of 4 * 17 floats, inputs of the net are calculated from the fields on demand
+// memory grows with the number of positions, it can be out of the heap
+// full buffer replaces RING - the oldest position, RESERVOIR - random position with probability capacity / addedN,
+// so that the buffer keeps the uniform sample of all added positions
+package space.aqoleg.neurogame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+class ReplayBuffer {
+    static final int RING = 0;
+    static final int RESERVOIR = 1;
+    // position: long[4] next fields, int[4] scores, int direction
+    static final int POSITION_SIZE = 4 * 8 + 4 * 4 + 4;
+    private static final int SCORES_OFFSET = 4 * 8;
+    private static final int DIRECTION_OFFSET = SCORES_OFFSET + 4 * 4;
+    private static final int MIN_POSITIONS = 1024; // positions of the first memory
+    private final int capacity;
+    private final int eviction;
+    private final boolean offHeap;
+    private final RandomGenerator random;
+    private ByteBuffer positions; // [positionN * POSITION_SIZE]
+    private int size;
+    private long addedN; // number of all added positions
+    private int oldest; // positionN of the oldest position of the full RING
+
+    // 0 < capacity <= Integer.MAX_VALUE / POSITION_SIZE, eviction - RING or RESERVOIR,
+    // offHeap - use direct memory, random - choice of RESERVOIR
+    ReplayBuffer(int capacity, int eviction, boolean offHeap, RandomGenerator random)
+            throws ExceptionInInitializerError {
+        if (capacity < 1 || capacity > Integer.MAX_VALUE / POSITION_SIZE) {
+            throw new ExceptionInInitializerError("incorrect capacity " + capacity);
+        }
+        if (eviction != RING && eviction != RESERVOIR) {
+            throw new ExceptionInInitializerError("incorrect eviction " + eviction);
+        }
+        this.capacity = capacity;
+        this.eviction = eviction;
+        this.offHeap = offHeap;
+        this.random = random;
+        positions = allocate(Math.min(capacity, MIN_POSITIONS));
+    }
+
+    ReplayBuffer(int capacity, int eviction, boolean offHeap) throws ExceptionInInitializerError {
+        this(capacity, eviction, offHeap, new SplittableRandom());
+    }
+
+    // Return empty buffer with the same capacity, eviction and memory and own random,
+    // random of this buffer is not used, so threads can call it at the same time
+    ReplayBuffer getEmpty() {
+        return new ReplayBuffer(capacity, eviction, offHeap, new SplittableRandom());
+    }
+
+    // Return new buffer with the same positions
+    ReplayBuffer copy() {
+        ReplayBuffer buffer = getEmpty();
+        buffer.positions = allocate(Math.max(size, 1));
+        buffer.positions.put(0, positions, 0, size * POSITION_SIZE);
+        buffer.size = size;
+        buffer.addedN = addedN;
+        buffer.oldest = oldest;
+        return buffer;
+    }
+
+    // Add position, nextFields[direction] and scores[direction] of each direction, direction of the player
+    // return positionN of the added position or -1 if RESERVOIR skips it
+    int add(long[] nextFields, int[] scores, int direction) {
+        addedN++;
+        int positionN;
+        if (size < capacity) {
+            if (size * POSITION_SIZE == positions.capacity()) {
+                grow();
+            }
+            positionN = size++;
+        } else if (eviction == RING) {
+            positionN = oldest;
+            oldest = (oldest + 1) % capacity;
+        } else {
+            long n = random.nextLong(addedN);
+            if (n >= capacity) {
+                return -1;
+            }
+            positionN = (int) n;
+        }
+        int offset = positionN * POSITION_SIZE;
+        for (int d = 0; d < 4; d++) {
+            positions.putLong(offset + 8 * d, nextFields[d]);
+            positions.putInt(offset + SCORES_OFFSET + 4 * d, scores[d]);
+        }
+        positions.putInt(offset + DIRECTION_OFFSET, direction);
+        return positionN;
+    }
+
+    // Return number of the positions in the buffer
+    int size() {
+        return size;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    // Return number of all added positions, including replaced and skipped
+    long getAddedN() {
+        return addedN;
+    }
+
+    // Return field after the move in this direction of the position 0 <= positionN < size()
+    long getNextField(int positionN, int direction) {
+        return positions.getLong(positionN * POSITION_SIZE + 8 * direction);
+    }
+
+    // Return score of the move in this direction of the position, < 0 if there is no move
+    int getScore(int positionN, int direction) {
+        return positions.getInt(positionN * POSITION_SIZE + SCORES_OFFSET + 4 * direction);
+    }
+
+    // Return direction of the player of the position
+    int getDirection(int positionN) {
+        return positions.getInt(positionN * POSITION_SIZE + DIRECTION_OFFSET);
+    }
+
+    // Write all positions into channel from this byte
+    void write(FileChannel channel, long position) throws IOException {
+        ByteBuffer bytes = positions.duplicate().position(0).limit(size * POSITION_SIZE);
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    // Replace positions with positionsN <= capacity positions of channel from this byte
+    void read(FileChannel channel, long position, int positionsN) throws IOException {
+        clear();
+        if (positions.capacity() < positionsN * POSITION_SIZE) {
+            positions = allocate(positionsN);
+        }
+        ByteBuffer bytes = positions.duplicate().position(0).limit(positionsN * POSITION_SIZE);
+        while (bytes.hasRemaining()) {
+            int n = channel.read(bytes, position);
+            if (n < 0) {
+                throw new IOException("end of file");
+            }
+            position += n;
+        }
+        size = positionsN;
+        addedN = positionsN;
+    }
+
+    // Remove all positions, memory is kept
+    void clear() {
+        size = 0;
+        addedN = 0;
+        oldest = 0;
+    }
+
+    // Double memory, but not more than capacity
+    private void grow() {
+        int positionsN = (int) Math.min(capacity, 2L * size);
+        ByteBuffer positions = allocate(positionsN);
+        positions.put(0, this.positions, 0, size * POSITION_SIZE);
+        this.positions = positions;
+    }
+
+    private ByteBuffer allocate(int positionsN) {
+        int size = positionsN * POSITION_SIZE;
+        return offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+}
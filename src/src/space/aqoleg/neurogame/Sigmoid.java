@@ -0,0 +1,80 @@
+// Activation function out = 1 / (1 + e^(-net)) with selectable implementation
+// EXACT - Math.exp in double, the reference
+// TABLE - linear interpolation of the table with step 1/64 on -16 <= net <= 16, |error| < 5e-6
+// RATIONAL - 0.5 + 0.5 * tanh(net / 2), tanh from the continued fraction 7/6 on |net / 2| <= 4.97, |error| < 6e-5
+// each implementation gives 0 < out < 1, so the derivative out * (1 - out) of learning stays the same
+package space.aqoleg.neurogame;
+
+class Sigmoid {
+    static final int EXACT = 0;
+    static final int TABLE = 1;
+    static final int RATIONAL = 2;
+    private static final float TABLE_RANGE = 16;
+    private static final int TABLE_STEPS = 64; // per unit of net
+    private static final float RATIONAL_RANGE = 4.97f; // tanh approximation reaches 1 here
+    private static final float[] VALUES = new float[(int) (2 * TABLE_RANGE * TABLE_STEPS) + 2]; // last is extra
+
+    static {
+        for (int n = 0; n < VALUES.length; n++) {
+            double net = (double) n / TABLE_STEPS - TABLE_RANGE;
+            VALUES[n] = (float) (1 / (1 + Math.exp(-net)));
+        }
+    }
+
+    private Sigmoid() {
+    }
+
+    // Return true if the implementation exists
+    static boolean isCorrect(int sigmoid) {
+        return sigmoid == EXACT || sigmoid == TABLE || sigmoid == RATIONAL;
+    }
+
+    // Return out for this net
+    static float get(int sigmoid, float net) {
+        switch (sigmoid) {
+            case TABLE:
+                return getTable(net);
+            case RATIONAL:
+                return getRational(net);
+            default:
+                return getExact(net);
+        }
+    }
+
+    // Replace each net from values[0] to values[length - 1] with its out
+    static void apply(int sigmoid, float[] values, int length) {
+        switch (sigmoid) {
+            case TABLE:
+                for (int n = 0; n < length; n++) {
+                    values[n] = getTable(values[n]);
+                }
+                break;
+            case RATIONAL:
+                for (int n = 0; n < length; n++) {
+                    values[n] = getRational(values[n]);
+                }
+                break;
+            default:
+                for (int n = 0; n < length; n++) {
+                    values[n] = getExact(values[n]);
+                }
+        }
+    }
+
+    private static float getExact(float net) {
+        return (float) (1 / (1 + Math.exp(-net)));
+    }
+
+    private static float getTable(float net) {
+        float position = (Math.max(-TABLE_RANGE, Math.min(TABLE_RANGE, net)) + TABLE_RANGE) * TABLE_STEPS;
+        int n = (int) position;
+        return VALUES[n] + (VALUES[n + 1] - VALUES[n]) * (position - n);
+    }
+
+    private static float getRational(float net) {
+        float x = Math.max(-RATIONAL_RANGE, Math.min(RATIONAL_RANGE, net * 0.5f));
+        float x2 = x * x;
+        float tanh = x * (135135 + x2 * (17325 + x2 * (378 + x2))) / (135135 + x2 * (62370 + x2 * (3150 + x2 * 28)));
+        return 0.5f + 0.5f * tanh;
+    }
+}
@@ -0,0 +1,207 @@
+// Play many games without frame in the fork-join pool
+// each game has its own field with its own random, each task of games has its own policy
+package space.aqoleg.neurogame;
+
+import java.io.File;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+public class Simulator {
+    private static final int GAMES_PER_TASK = 16; // games played one by one with one policy
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L; // seed of the gameN is seed + gameN * SEED_STEP
+    private static final int CACHE_SIZE = 1 << 16; // answers of the brain in each thread
+    private final ForkJoinPool pool;
+
+    // parallelism - number of threads
+    Simulator(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    // Play with policy: java -cp neurogame.jar space.aqoleg.neurogame.Simulator [games] [policy]
+    // policy is random, greedy, brain, brain8, expectimax, montecarlo or ntuple,
+    // brain is loaded from the file of the game, brain8 is the same brain with 8 bit weights, see QuantizedNet,
+    // both brains keep the answers for the last CACHE_SIZE fields in each thread, see AnswerCache,
+    // ntuple is loaded from neurogame.nt near the file of the game, see NTuple.main,
+    // expectimax searches 2 moves with heuristic and one symmetric transposition table for all threads,
+    // montecarlo plays up to 400 random rollouts of 100 moves in the common pool for 20 ms
+    public static void main(String[] args) {
+        int gamesN = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        String policyName = args.length > 1 ? args[1] : "greedy";
+        Supplier<Policy> policies;
+        TranspositionTable table = null;
+        AnswerCache cache = null;
+        switch (policyName) {
+            case "random":
+                policies = () -> Policy.getRandom(new SplittableRandom());
+                break;
+            case "greedy":
+                policies = Policy::getGreedy;
+                break;
+            case "brain":
+            case "brain8":
+                Brain brain = new Brain(new Field());
+                File file = new File(new File(System.getProperty("user.home"), "Documents"), "neurogame.sv");
+                if (!brain.load(file)) {
+                    System.out.println("Can not load " + file.getPath());
+                    return;
+                }
+                cache = new AnswerCache(CACHE_SIZE);
+                brain.setCache(cache);
+                policies = policyName.equals("brain") ? brain::copy : brain.quantize()::copy;
+                break;
+            case "expectimax":
+                TranspositionTable sharedTable = new TranspositionTable(22, true);
+                policies = () -> new Expectimax(new Heuristic(), 2, 0.0001f, sharedTable);
+                table = sharedTable;
+                break;
+            case "ntuple":
+                NTuple nTuple = NTuple.getNTuple();
+                File nTupleFile = new File(new File(System.getProperty("user.home"), "Documents"), "neurogame.nt");
+                if (!nTuple.load(nTupleFile)) {
+                    System.out.println("Can not load " + nTupleFile.getPath());
+                    return;
+                }
+                policies = () -> nTuple;
+                break;
+            case "montecarlo":
+                policies = () -> new MonteCarlo(ForkJoinPool.commonPool(), 400, 100, 20_000_000L,
+                        Policy::getRandom, ThreadLocalRandom.current().nextLong());
+                break;
+            default:
+                System.out.println("Policy is random, greedy, brain, brain8, expectimax, montecarlo or ntuple");
+                return;
+        }
+        Simulator simulator = new Simulator(Runtime.getRuntime().availableProcessors());
+        System.out.println(simulator.play(policies, gamesN, System.nanoTime()));
+        if (table != null) {
+            System.out.println(table);
+        }
+        if (cache != null) {
+            System.out.println(cache);
+        }
+        simulator.shutdown();
+    }
+
+    // Play gamesN games till loose, get new policy from policies for each task
+    // the same seed gives the same fields for the same moves
+    Result play(Supplier<Policy> policies, int gamesN, long seed) {
+        long startTime = System.nanoTime();
+        Result result = pool.invoke(new Task(policies, seed, 0, gamesN));
+        result.nanos = System.nanoTime() - startTime;
+        return result;
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    // Play one game till loose or impossible move of the policy, add it to the result
+    private static void play(Policy policy, long seed, Result result) {
+        Field field = new Field(new SplittableRandom(seed));
+        field.start();
+        while (!field.areLoose()) {
+            if (!field.play(policy.getDirection(field))) {
+                break;
+            }
+            result.movesN++;
+        }
+        long board = field.getBoard();
+        result.gamesN++;
+        result.scores += Board.getSum(board);
+        result.maxCells[Board.getMaxCell(board)]++;
+    }
+
+    static class Result {
+        private final int[] maxCells = new int[Board.MAX_CELL + 1]; // [cell] count of games with this max cell
+        private long gamesN;
+        private long movesN;
+        private long scores; // sum of 2^n of all cells at the end of each game
+        private long nanos;
+
+        long getGamesN() {
+            return gamesN;
+        }
+
+        long getMovesN() {
+            return movesN;
+        }
+
+        double getGamesPerSecond() {
+            return gamesN * 1e9 / nanos;
+        }
+
+        double getMovesPerSecond() {
+            return movesN * 1e9 / nanos;
+        }
+
+        // Return average sum of 2^n of all cells at the end of the game
+        double getAverageScore() {
+            return gamesN == 0 ? 0 : (double) scores / gamesN;
+        }
+
+        // Return count of games with this max cell, cells values represent as 2^n
+        int getMaxCellCount(int cell) {
+            return maxCells[cell];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(gamesN).append(" games, ").append(movesN).append(" moves, ");
+            builder.append(String.format("%.1f games/s, %.1f moves/s, ", getGamesPerSecond(), getMovesPerSecond()));
+            builder.append(String.format("average score %.1f", getAverageScore()));
+            for (int cell = 0; cell <= Board.MAX_CELL; cell++) {
+                if (maxCells[cell] != 0) {
+                    builder.append('\n').append(1 << cell).append(": ").append(maxCells[cell]);
+                }
+            }
+            return builder.toString();
+        }
+
+        private void add(Result result) {
+            gamesN += result.gamesN;
+            movesN += result.movesN;
+            scores += result.scores;
+            for (int cell = 0; cell <= Board.MAX_CELL; cell++) {
+                maxCells[cell] += result.maxCells[cell];
+            }
+        }
+    }
+
+    // Play games from firstGameN to lastGameN - 1, split if there are too many games
+    @SuppressWarnings("serial")
+    private static class Task extends RecursiveTask<Result> {
+        private final Supplier<Policy> policies;
+        private final long seed;
+        private final int firstGameN;
+        private final int lastGameN;
+
+        private Task(Supplier<Policy> policies, long seed, int firstGameN, int lastGameN) {
+            this.policies = policies;
+            this.seed = seed;
+            this.firstGameN = firstGameN;
+            this.lastGameN = lastGameN;
+        }
+
+        @Override
+        protected Result compute() {
+            if (lastGameN - firstGameN > GAMES_PER_TASK) {
+                int middleGameN = (firstGameN + lastGameN) >>> 1;
+                Task first = new Task(policies, seed, firstGameN, middleGameN);
+                first.fork();
+                Result result = new Task(policies, seed, middleGameN, lastGameN).compute();
+                result.add(first.join());
+                return result;
+            }
+            Result result = new Result();
+            Policy policy = policies.get();
+            for (int gameN = firstGameN; gameN < lastGameN; gameN++) {
+                play(policy, seed + gameN * SEED_STEP, result);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+// Deterministic data-parallel learning of the net in the fork-join pool
+// each mini-batch is split into slices of sliceSize inputs, threads calculate gradients of the slices
+// in the own activations of each slice with the same weights, then the gradients are summed pairwise in the fixed order
+// ((0 + 1) + (2 + 3)) + ((4 + 5) + ...) and applied at once, so the result does not depend on the number of threads:
+// the same net and inputs give bit-identical weights with any threadsN
+package space.aqoleg.neurogame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+class Trainer {
+    private final Net net;
+    private final int sliceSize;
+    private final ForkJoinPool pool;
+    private final List<ForkJoinTask<Double>> tasks = new ArrayList<>();
+    private Activations[] slices = new Activations[0];
+
+    // threadsN - number of threads, sliceSize - number of inputs of one task, sliceSize > 0
+    Trainer(Net net, int threadsN, int sliceSize) throws ExceptionInInitializerError {
+        if (sliceSize < 1) {
+            throw new ExceptionInInitializerError("sliceSize < 1");
+        }
+        this.net = net;
+        this.sliceSize = sliceSize;
+        pool = new ForkJoinPool(threadsN);
+    }
+
+    // Learn all inputs with targets once in mini-batches of batchSize as Net.learn
+    // return mean error 0.5 * (target - output)^2 before learning or -1 if incorrect inputs
+    float learn(float[][] inputs, float[] targets, float alpha, int batchSize) {
+        if (batchSize < 1 || !net.areCorrect(inputs, targets)) {
+            return -1;
+        }
+        int slicesN = (Math.min(batchSize, inputs.length) + sliceSize - 1) / sliceSize;
+        if (slices.length < slicesN) {
+            slices = new Activations[slicesN];
+            for (int sliceN = 0; sliceN < slicesN; sliceN++) {
+                slices[sliceN] = net.getActivations(sliceSize);
+            }
+        }
+        double error = 0;
+        for (int first = 0; first < inputs.length; first += batchSize) {
+            int batchN = Math.min(batchSize, inputs.length - first);
+            int batchSlicesN = (batchN + sliceSize - 1) / sliceSize;
+            for (int sliceN = 0; sliceN < batchSlicesN; sliceN++) {
+                int sliceFirst = first + sliceN * sliceSize;
+                int sliceInputsN = Math.min(sliceSize, first + batchN - sliceFirst);
+                Activations slice = slices[sliceN];
+                tasks.add(pool.submit(() -> net.accumulate(inputs, targets, sliceFirst, sliceInputsN, slice)));
+            }
+            // join in the order of the slices
+            for (ForkJoinTask<Double> task : tasks) {
+                error += task.join();
+            }
+            tasks.clear();
+            // sum pairwise, the sum of all slices is in the slice 0
+            for (int step = 1; step < batchSlicesN; step <<= 1) {
+                for (int sliceN = 0; sliceN + step < batchSlicesN; sliceN += step << 1) {
+                    slices[sliceN].addGradients(slices[sliceN + step]);
+                }
+            }
+            net.update(slices[0].getGradients(), batchN, alpha);
+        }
+        return (float) (error / inputs.length);
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,117 @@
+// Bounded table of the values of the fields with the depth of the search, can be shared between threads
+// each field has 2 entries in its bucket, new value replaces the entry of the same field if it is not less deep,
+// else the entry from the older age, else the less deep entry
+// table is lock-free: each entry is 2 longs, field ^ data and data, torn entry does not match any field
+// if symmetric, rotated and reflected fields share one entry, use only with symmetric evaluations
+package space.aqoleg.neurogame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+class TranspositionTable {
+    // data = value bits | depth << 32 | age << 40
+    private static final long VALUE_MASK = 0xFFFFFFFFL;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int AGE_SHIFT = 40;
+    private final int bucketBits;
+    private final boolean symmetric;
+    private final AtomicLongArray keys; // [entryN] field ^ data, 0 with data 0 is empty entry
+    private final AtomicLongArray data; // [entryN]
+    private final AtomicInteger age = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // 2^bits entries, 1 < bits < 31
+    TranspositionTable(int bits, boolean symmetric) throws ExceptionInInitializerError {
+        if (bits < 2 || bits > 30) {
+            throw new ExceptionInInitializerError("bits < 2 or bits > 30");
+        }
+        bucketBits = bits - 1;
+        this.symmetric = symmetric;
+        keys = new AtomicLongArray(1 << bits);
+        data = new AtomicLongArray(1 << bits);
+    }
+
+    // Start new age, entries from the old ages are replaced first
+    void nextAge() {
+        age.incrementAndGet();
+    }
+
+    // Return number of the started ages
+    int getAge() {
+        return age.get();
+    }
+
+    // Return value of the field searched with depth not less then this depth, NaN if there is no such value
+    float get(long field, int depth) {
+        if (symmetric) {
+            field = Board.getCanonical(field);
+        }
+        int entryN = getBucket(field) << 1;
+        for (int i = 0; i < 2; i++, entryN++) {
+            long entryData = data.getOpaque(entryN);
+            if ((keys.getOpaque(entryN) ^ entryData) == field && getDepth(entryData) >= depth) {
+                hits.increment();
+                return Float.intBitsToFloat((int) entryData);
+            }
+        }
+        misses.increment();
+        return Float.NaN;
+    }
+
+    // Save value of the field searched with this depth, 0 <= depth < 256
+    void put(long field, int depth, float value) {
+        if (symmetric) {
+            field = Board.getCanonical(field);
+        }
+        int currentAge = age.get() & 0xFF;
+        long newData = (Float.floatToRawIntBits(value) & VALUE_MASK) | (long) depth << DEPTH_SHIFT
+                | (long) currentAge << AGE_SHIFT;
+        int firstEntryN = getBucket(field) << 1;
+        int replaceN = firstEntryN;
+        int replaceWeight = Integer.MAX_VALUE;
+        for (int entryN = firstEntryN; entryN < firstEntryN + 2; entryN++) {
+            long entryData = data.getOpaque(entryN);
+            int entryDepth = getDepth(entryData);
+            if ((keys.getOpaque(entryN) ^ entryData) == field) {
+                if (depth < entryDepth) {
+                    return;
+                }
+                replaceN = entryN;
+                break;
+            }
+            // entries from old ages go first, then less deep
+            int weight = (int) (entryData >>> AGE_SHIFT) == currentAge ? 256 + entryDepth : entryDepth;
+            if (weight < replaceWeight) {
+                replaceWeight = weight;
+                replaceN = entryN;
+            }
+        }
+        data.setOpaque(replaceN, newData);
+        keys.setOpaque(replaceN, field ^ newData);
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        long hits = getHits();
+        long all = hits + getMisses();
+        return String.format("%d hits, %d misses, hit rate %.3f", hits, all - hits, all == 0 ? 0 : (double) hits / all);
+    }
+
+    private int getBucket(long field) {
+        return (int) ((field * 0x9E3779B97F4A7C15L) >>> (64 - bucketBits));
+    }
+
+    private static int getDepth(long entryData) {
+        return (int) (entryData >>> DEPTH_SHIFT) & 0xFF;
+    }
+}
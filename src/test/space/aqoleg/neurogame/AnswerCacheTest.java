@@ -0,0 +1,82 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnswerCacheTest {
+
+    @Test
+    void get() {
+        assertThrows(ExceptionInInitializerError.class, () -> new AnswerCache(0));
+        AnswerCache cache = new AnswerCache(4);
+        assertTrue(Float.isNaN(cache.get(5, 2, 0)));
+        cache.put(5, 2, 0, 0.7f);
+        assertEquals(0.7f, cache.get(5, 2, 0));
+        assertTrue(Float.isNaN(cache.get(5, 3, 0)));
+        assertTrue(Float.isNaN(cache.get(6, 2, 0)));
+        cache.put(5, 2, 0, 0.2f);
+        assertEquals(0.2f, cache.get(5, 2, 0));
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0.4f, cache.getHitRate());
+        assertEquals("2 hits, 3 misses, hit rate 0.400", cache.toString());
+    }
+
+    @Test
+    void version() {
+        AnswerCache cache = new AnswerCache(4);
+        cache.put(5, 2, 1, 0.7f);
+        assertEquals(0.7f, cache.get(5, 2, 1));
+        assertTrue(Float.isNaN(cache.get(5, 2, 2)));
+        // the old answer is removed
+        assertTrue(Float.isNaN(cache.get(5, 2, 1)));
+    }
+
+    @Test
+    void leastRecentlyUsed() {
+        AnswerCache cache = new AnswerCache(3);
+        cache.put(1, 0, 0, 0.1f);
+        cache.put(2, 0, 0, 0.2f);
+        cache.put(3, 0, 0, 0.3f);
+        assertEquals(0.1f, cache.get(1, 0, 0));
+        // 2 is the oldest
+        cache.put(4, 0, 0, 0.4f);
+        assertTrue(Float.isNaN(cache.get(2, 0, 0)));
+        assertEquals(0.1f, cache.get(1, 0, 0));
+        assertEquals(0.3f, cache.get(3, 0, 0));
+        assertEquals(0.4f, cache.get(4, 0, 0));
+        // 1 is the oldest
+        cache.put(3, 0, 0, 0.5f);
+        cache.put(5, 0, 0, 0.6f);
+        assertTrue(Float.isNaN(cache.get(1, 0, 0)));
+        assertEquals(0.5f, cache.get(3, 0, 0));
+    }
+
+    @Test
+    void many() {
+        // compare with the last answers of the random fields
+        int capacity = 100;
+        AnswerCache cache = new AnswerCache(capacity);
+        AnswerCache other = cache.getEmpty();
+        SplittableRandom random = new SplittableRandom(6);
+        long[] fields = new long[capacity];
+        for (int i = 0; i < 10000; i++) {
+            long field = random.nextLong(150);
+            if (Float.isNaN(cache.get(field, 8, 0))) {
+                cache.put(field, 8, 0, field);
+            } else {
+                assertEquals((float) field, cache.get(field, 8, 0));
+            }
+            fields[i % capacity] = field;
+        }
+        // the last used fields are in the cache
+        for (int n = 0; n < 10; n++) {
+            assertEquals((float) fields[capacity - 1 - n], cache.get(fields[capacity - 1 - n], 8, 0));
+        }
+        assertTrue(other.getHits() > 0);
+        assertEquals(cache.getHits() + cache.getMisses(), other.getHits() + other.getMisses());
+    }
+}
@@ -0,0 +1,158 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoardTest {
+
+    @Test
+    void cells() {
+        long board = 0;
+        assertEquals(16, Board.countEmpty(board));
+        board = Board.setCell(board, 0, 3);
+        board = Board.setCell(board, 7, 15);
+        board = Board.setCell(board, 15, 9);
+        assertEquals(0x9000_0000_F000_0003L, board);
+        assertEquals(3, Board.getCell(board, 0));
+        assertEquals(15, Board.getCell(board, 7));
+        assertEquals(9, Board.getCell(board, 15));
+        assertEquals(0, Board.getCell(board, 8));
+        assertEquals(13, Board.countEmpty(board));
+        board = Board.setCell(board, 7, 1);
+        assertEquals(1, Board.getCell(board, 7));
+        assertEquals(0xF003, Board.getRow(Board.setCell(board, 3, 15), 0));
+        assertEquals(0x1000, Board.getRow(board, 1));
+        assertEquals(9, Board.getMaxCell(board));
+        assertEquals(8 + 2 + 512, Board.getSum(board));
+    }
+
+    @Test
+    void transpose() {
+        long board = get(new int[]{
+                0, 1, 2, 3,
+                4, 5, 6, 7,
+                8, 9, 10, 11,
+                12, 13, 14, 15});
+        long transposed = Board.transpose(board);
+        assertEquals(get(new int[]{
+                0, 4, 8, 12,
+                1, 5, 9, 13,
+                2, 6, 10, 14,
+                3, 7, 11, 15}), transposed);
+        assertEquals(board, Board.transpose(transposed));
+    }
+
+    @Test
+    void canonical() {
+        long board = get(new int[]{
+                1, 2, 0, 0,
+                0, 3, 0, 0,
+                0, 0, 0, 0,
+                0, 0, 0, 4});
+        assertEquals(get(new int[]{
+                0, 0, 2, 1,
+                0, 0, 3, 0,
+                0, 0, 0, 0,
+                4, 0, 0, 0}), Board.mirror(board));
+        assertEquals(get(new int[]{
+                0, 0, 0, 4,
+                0, 0, 0, 0,
+                0, 3, 0, 0,
+                1, 2, 0, 0}), Board.flip(board));
+        long canonical = Board.getCanonical(board);
+        long transposed = Board.transpose(board);
+        assertEquals(canonical, Board.getCanonical(Board.mirror(board)));
+        assertEquals(canonical, Board.getCanonical(Board.flip(board)));
+        assertEquals(canonical, Board.getCanonical(transposed));
+        assertEquals(canonical, Board.getCanonical(Board.flip(Board.mirror(transposed))));
+        assertNotEquals(canonical, Board.getCanonical(Board.setCell(board, 8, 1)));
+    }
+
+    @Test
+    void move() {
+        long board = get(new int[]{
+                1, 0, 1, 3,
+                1, 4, 3, 3,
+                0, 0, 8, 2,
+                13, 12, 1, 0});
+        assertEquals(get(new int[]{
+                0, 0, 1, 0,
+                0, 0, 3, 0,
+                2, 4, 8, 4,
+                13, 12, 1, 2}), Board.move(board, Field.DOWN));
+        assertEquals(get(new int[]{
+                2, 3, 0, 0,
+                1, 4, 4, 0,
+                8, 2, 0, 0,
+                13, 12, 1, 0}), Board.move(board, Field.LEFT));
+        assertEquals(get(new int[]{
+                0, 0, 2, 3,
+                0, 1, 4, 4,
+                0, 0, 8, 2,
+                0, 13, 12, 1}), Board.move(board, Field.RIGHT));
+        assertEquals(get(new int[]{
+                2, 4, 1, 4,
+                13, 12, 3, 2,
+                0, 0, 8, 0,
+                0, 0, 1, 0}), Board.move(board, Field.UP));
+    }
+
+    @Test
+    void impossibleMove() {
+        long board = get(new int[]{
+                1, 2, 1, 2,
+                5, 4, 3, 2,
+                6, 7, 8, 9,
+                13, 12, 11, 10});
+        assertEquals(board, Board.move(board, Field.LEFT));
+        assertEquals(board, Board.move(board, Field.RIGHT));
+        assertNotEquals(board, Board.move(board, Field.DOWN));
+        assertNotEquals(board, Board.move(board, Field.UP));
+        assertEquals(1 << Field.DOWN | 1 << Field.UP, Board.getPossibleMoves(board));
+        assertEquals(1 << Field.DOWN | 1 << Field.LEFT | 1 << Field.UP, Board.getPossibleMoves(get(new int[]{
+                0, 2, 1, 2,
+                5, 4, 3, 2,
+                6, 7, 8, 9,
+                13, 12, 11, 10})));
+        assertEquals(0, Board.getPossibleMoves(get(new int[]{
+                1, 2, 1, 2,
+                2, 1, 2, 1,
+                1, 2, 1, 2,
+                2, 1, 2, 1})));
+    }
+
+    @Test
+    void maxCell() {
+        long board = get(new int[]{
+                15, 15, 14, 14,
+                0, 15, 0, 15,
+                0, 0, 0, 0,
+                0, 0, 0, 0});
+        assertEquals(get(new int[]{
+                15, 15, 15, 0,
+                15, 15, 0, 0,
+                0, 0, 0, 0,
+                0, 0, 0, 0}), Board.move(board, Field.LEFT));
+    }
+
+    @Test
+    void rowsScore() {
+        long board = get(new int[]{
+                1, 1, 1, 1,
+                0, 3, 0, 3,
+                2, 1, 2, 1,
+                15, 1, 15, 1});
+        assertEquals(1 + 1 + 3 + 4, Board.getRowsScore(board));
+        assertEquals(1 + 1 + 2, Board.getRowsScore(Board.transpose(board)));
+        assertEquals(0, Board.getRowsScore(0));
+    }
+
+    private long get(int[] cells) {
+        long board = 0;
+        for (int cellN = 0; cellN < 16; cellN++) {
+            board = Board.setCell(board, cellN, cells[cellN]);
+        }
+        return board;
+    }
+}
@@ -2,10 +2,11 @@ package space.aqoleg.neurogame;
 
 import org.junit.jupiter.api.Test;
 
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -85,6 +86,31 @@ class BrainTest {
         assertTrue(file.delete());
     }
 
+    @Test
+    void loadOldVersion() throws IOException {
+        File file = new File(new File(System.getProperty("user.home"), "Documents"), "neurogame.test");
+        // weights of 17-40-20-8-1 net and field without the header
+        DataOutputStream stream = new DataOutputStream(new FileOutputStream(file));
+        for (int n = 0; n < 18 * 40 + 41 * 20 + 21 * 8 + 9; n++) {
+            stream.writeFloat(0);
+        }
+        for (int cellN = 0; cellN < 16; cellN++) {
+            stream.writeByte(cellN == 5 ? 3 : 0);
+        }
+        stream.close();
+        Field field = new Field();
+        Brain brain = new Brain(field);
+        brain.initialize();
+        assertTrue(brain.load(file));
+        assertEquals(3, field.getCell(5));
+        brain.perceive();
+        assertEquals(0.5, brain.getAnswer(Field.UP));
+        assertTrue(brain.save(file));
+        assertTrue(brain.load(file));
+        assertEquals(3, field.getCell(5));
+        assertTrue(file.delete());
+    }
+
     @Test
     void perceive() {
         Brain brain = new Brain(new TestField());
@@ -102,6 +128,25 @@ class BrainTest {
         }
     }
 
+    @Test
+    void getDirection() throws IOException {
+        Field field = new Field();
+        DataInputStream stream = new DataInputStream(new ByteArrayInputStream(new byte[]{
+                1, 2, 3, 0,
+                2, 3, 1, 8,
+                1, 2, 3, 6,
+                3, 1, 9, 4}));
+        field.load(stream);
+        stream.close();
+        Brain brain = new Brain(new Field());
+        brain.initialize();
+        for (int i = 0; i < 10; i++) {
+            int direction = brain.copy().getDirection(field);
+            assertTrue(direction == Field.UP || direction == Field.RIGHT);
+            brain.initialize();
+        }
+    }
+
     @Test
     void learn() {
         Brain brain = new Brain(new TestField());
@@ -113,6 +158,126 @@ class BrainTest {
         }
         brain.add(3);
         brain.learn();
+        brain.perceive();
+        brain.add(1);
+        brain.learn(8);
+        assertEquals(2, brain.getMovesN());
+    }
+
+    @Test
+    void replayBuffer() {
+        Brain brain = new Brain(new TestField(), new ReplayBuffer(3, ReplayBuffer.RING, true));
+        brain.initialize();
+        for (int move = 0; move < 5; move++) {
+            brain.perceive();
+            brain.add(move % 2 == 0 ? 0 : 3);
+        }
+        assertEquals(3, brain.getMovesN());
+        assertEquals(0, brain.copy().getMovesN());
+        float accuracy = brain.getAccuracy();
+        assertTrue(accuracy >= 0 && accuracy <= 1);
+    }
+
+    @Test
+    void learnInBackground() {
+        Brain brain = new Brain(new TestField());
+        brain.initialize();
+        brain.perceive();
+        // the move differs from the answer of the net, the direction 2 is impossible
+        brain.add(brain.getAnswer(3) > Math.max(brain.getAnswer(0), brain.getAnswer(1)) ? 0 : 3);
+        brain.perceive();
+        float answer = brain.getAnswer(0);
+        List<Runnable> tasks = new ArrayList<>();
+        List<Integer> epochs = new ArrayList<>();
+        CompletableFuture<Void> learning = brain.learn(tasks::add, epochs::add);
+        // the next move is not learned this time
+        brain.perceive();
+        brain.add(1);
+        assertEquals(1, tasks.size());
+        assertFalse(learning.isDone());
+        brain.perceive();
+        assertEquals(answer, brain.getAnswer(0));
+        tasks.get(0).run();
+        assertTrue(learning.isDone());
+        assertEquals(1000, epochs.size());
+        assertEquals(999, (int) epochs.get(999));
+        brain.perceive();
+        assertNotEquals(answer, brain.getAnswer(0));
+    }
+
+    @Test
+    void cache() {
+        Field field = new Field(new SplittableRandom(7));
+        field.start();
+        Brain brain = new Brain(field);
+        brain.initialize();
+        Brain cached = brain.copy();
+        AnswerCache cache = new AnswerCache(16);
+        cached.setCache(cache);
+        for (int i = 0; i < 3; i++) {
+            brain.perceive();
+            cached.perceive();
+            for (int direction = 0; direction < 4; direction++) {
+                assertEquals(brain.getAnswer(direction), cached.getAnswer(direction));
+            }
+        }
+        assertEquals(8, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        long board = Board.move(field.getBoard(), Field.UP);
+        assertEquals(brain.evaluate(board, 4), cached.evaluate(board, 4));
+        assertEquals(brain.evaluate(board, 4), cached.evaluate(board, 4));
+        assertEquals(9, cache.getHits());
+        // new weights are seen at once
+        brain.initialize();
+        brain.perceive();
+        cached.perceive();
+        assertEquals(brain.getAnswer(Field.LEFT), cached.getAnswer(Field.LEFT));
+        assertEquals(9, cache.getHits());
+        // partial hit perceives only the missed directions
+        long misses = cache.getMisses();
+        long nextField = 0;
+        for (int cellN = 0; cellN < 16; cellN++) {
+            nextField = Board.setCell(nextField, cellN, field.getNextFieldCell(Field.UP, cellN));
+        }
+        cache.clear();
+        cached.evaluate(nextField, field.getScore(Field.UP));
+        brain.perceive();
+        cached.perceive();
+        for (int direction = 0; direction < 4; direction++) {
+            assertEquals(brain.getAnswer(direction), cached.getAnswer(direction));
+        }
+        assertEquals(10, cache.getHits());
+        assertEquals(misses + 4, cache.getMisses());
+    }
+
+    @Test
+    void learnParallel() {
+        Field field = new Field(new SplittableRandom(21));
+        Brain brain = new Brain(field);
+        brain.initialize();
+        Policy teacher = Policy.getGreedy();
+        field.start();
+        for (int move = 0; move < 20; move++) {
+            brain.perceive();
+            int direction = teacher.getDirection(field);
+            brain.add(direction);
+            field.play(direction);
+        }
+        brain.perceive();
+        float answer = brain.getAnswer(Field.LEFT);
+        List<Integer> epochs = new ArrayList<>();
+        float accuracy = brain.learnParallel(3, epochs::add);
+        assertTrue(accuracy >= 0 && accuracy <= 1);
+        assertEquals(1000, epochs.size());
+        brain.perceive();
+        assertNotEquals(answer, brain.getAnswer(Field.LEFT));
+        // moves are kept
+        assertEquals(20, brain.getMovesN());
+        brain.perceive();
+        answer = brain.getAnswer(Field.LEFT);
+        assertEquals(accuracy, brain.getAccuracy());
+        // answers of perceive are kept
+        assertEquals(answer, brain.getAnswer(Field.LEFT));
     }
 
     private class TestField extends Field {
@@ -0,0 +1,67 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncoderTest {
+
+    @Test
+    void relative() {
+        Encoder encoder = Encoder.getRelative();
+        float[] input = new float[Encoder.INPUTS_N];
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < 1000; i++) {
+            long field = random.nextLong();
+            int score = i % 10 == 0 ? -2 : random.nextInt(5000);
+            encoder.encode(field, score, input);
+            // the same as 1 / 2^(max - cell)
+            int max = Board.getMaxCell(field);
+            for (int cellN = 0; cellN < 16; cellN++) {
+                int cell = Board.getCell(field, cellN);
+                assertEquals(cell == 0 ? 0 : (float) (1 / Math.pow(2, max - cell)), input[cellN]);
+            }
+            assertEquals(score >= 0 ? score / 256f : score, input[16]);
+        }
+        encoder.encode(0x0000_0000_0000_0031L, 512, input);
+        assertEquals(0.25f, input[0]);
+        assertEquals(1, input[1]);
+        assertEquals(0, input[2]);
+        assertEquals(2, input[16]);
+    }
+
+    @Test
+    void absolute() {
+        float[] input = new float[Encoder.INPUTS_N];
+        Encoder.getAbsolute().encode(0xF000_0000_0000_0031L, -2, input);
+        assertEquals(1 / 15f, input[0]);
+        assertEquals(3 / 15f, input[1]);
+        assertEquals(0, input[2]);
+        assertEquals(1, input[15]);
+        assertEquals(-2, input[16]);
+    }
+
+    @Test
+    void brain() {
+        Field field = new Field(new SplittableRandom(4));
+        field.start();
+        field.play(Field.LEFT);
+        Brain relative = new Brain(field, new ReplayBuffer(10, ReplayBuffer.RING, false));
+        relative.initialize();
+        relative.perceive();
+        for (int direction = 0; direction < 4; direction++) {
+            if (field.isPossible(direction)) {
+                assertEquals(relative.getAnswer(direction),
+                        relative.evaluate(Board.move(field.getBoard(), direction), field.getScore(direction)));
+            }
+        }
+        Brain absolute = new Brain(field, new ReplayBuffer(10, ReplayBuffer.RING, false), Encoder.getAbsolute());
+        absolute.initialize();
+        absolute.perceive();
+        absolute.add(Field.UP);
+        absolute.learn(4);
+        assertEquals(1, absolute.getMovesN());
+    }
+}
@@ -0,0 +1,56 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpectimaxTest {
+
+    @Test
+    void get() {
+        assertThrows(ExceptionInInitializerError.class, () -> new Expectimax(new Heuristic(), 0, 0));
+    }
+
+    @Test
+    void getDirection() throws IOException {
+        Field field = new Field();
+        DataInputStream stream = new DataInputStream(new ByteArrayInputStream(new byte[]{
+                1, 2, 3, 0,
+                2, 3, 1, 8,
+                1, 2, 3, 6,
+                3, 1, 9, 4}));
+        field.load(stream);
+        stream.close();
+        for (int depth = 1; depth < 4; depth++) {
+            int direction = new Expectimax(new Heuristic(), depth, 0.001f).getDirection(field);
+            assertTrue(direction == Field.UP || direction == Field.RIGHT);
+        }
+        Brain brain = new Brain(new Field());
+        brain.initialize();
+        int direction = new Expectimax(brain, 2, 0.001f).getDirection(field);
+        assertTrue(direction == Field.UP || direction == Field.RIGHT);
+    }
+
+    @Test
+    void play() {
+        Simulator simulator = new Simulator(4);
+        Simulator.Result greedy = simulator.play(Policy::getGreedy, 8, 5);
+        Simulator.Result expectimax = simulator.play(() -> new Expectimax(new Heuristic(), 2, 0.001f), 8, 5);
+        System.out.println(expectimax);
+        assertTrue(expectimax.getAverageScore() > greedy.getAverageScore());
+        simulator.shutdown();
+    }
+
+    @Test
+    void sharedTable() {
+        // the shared table starts new age on each move of all threads
+        TranspositionTable table = new TranspositionTable(16, true);
+        Simulator simulator = new Simulator(4);
+        Simulator.Result result = simulator.play(() -> new Expectimax(new Heuristic(), 2, 0.001f, table), 4, 5);
+        assertTrue(result.getMovesN() > 0);
+        assertEquals(result.getMovesN(), table.getAge());
+        simulator.shutdown();
+    }
+}
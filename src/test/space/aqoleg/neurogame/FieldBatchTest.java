@@ -0,0 +1,82 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FieldBatchTest {
+
+    @Test
+    void start() {
+        FieldBatch batch = new FieldBatch(50);
+        assertEquals(50, batch.getSize());
+        batch.start();
+        for (int fieldN = 0; fieldN < 50; fieldN++) {
+            assertEquals(14, Board.countEmpty(batch.getField(fieldN)));
+            assertTrue(Board.getMaxCell(batch.getField(fieldN)) <= 2);
+            assertFalse(batch.areLoose(fieldN));
+        }
+        assertEquals(0, batch.getLooseN());
+    }
+
+    @Test
+    void sameAsField() {
+        FieldBatch batch = new FieldBatch(1, new SplittableRandom(11));
+        Field field = new Field(new SplittableRandom(11));
+        batch.start();
+        field.start();
+        int[] directions = new int[1];
+        for (int i = 0; i < 300 && !field.areLoose(); i++) {
+            directions[0] = i % 4;
+            assertEquals(field.play(directions[0]) ? 1 : 0, batch.play(directions));
+            assertEquals(field.getBoard(), batch.getField(0));
+            assertEquals(field.areLoose(), batch.areLoose(0));
+            for (int direction = 0; direction < 4; direction++) {
+                assertEquals(field.getScore(direction), batch.getScore(0, direction));
+                for (int cellN = 0; cellN < 16; cellN++) {
+                    assertEquals(field.getNextFieldCell(direction, cellN),
+                            Board.getCell(batch.getNextField(0, direction), cellN));
+                }
+            }
+        }
+    }
+
+    @Test
+    void play() {
+        FieldBatch batch = new FieldBatch(200, new SplittableRandom(3));
+        batch.start();
+        int[] directions = new int[200];
+        int movesN = 0;
+        while (batch.getLooseN() < 200) {
+            for (int fieldN = 0; fieldN < 200; fieldN++) {
+                directions[fieldN] = -1;
+                for (int direction = fieldN % 4; !batch.areLoose(fieldN); direction = (direction + 1) % 4) {
+                    if (batch.getScore(fieldN, direction) >= 0) {
+                        directions[fieldN] = direction;
+                        break;
+                    }
+                }
+            }
+            movesN += batch.play(directions);
+        }
+        assertTrue(movesN > 200);
+        directions[0] = Field.LEFT;
+        assertEquals(0, batch.play(directions));
+        batch.start(0);
+        assertFalse(batch.areLoose(0));
+        assertEquals(199, batch.getLooseN());
+        // the direction of the next field is not played
+        batch.start(1);
+        int direction = 0;
+        while (batch.getScore(1, direction) < 0) {
+            direction++;
+        }
+        long field = batch.getField(0);
+        directions[0] = 4 + direction;
+        directions[1] = -1;
+        assertEquals(0, batch.play(directions));
+        assertEquals(field, batch.getField(0));
+    }
+}
@@ -3,6 +3,7 @@ package space.aqoleg.neurogame;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.util.SplittableRandom;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,6 +21,20 @@ class FieldTest {
         checkStartField(field);
     }
 
+    @Test
+    void seed() throws IOException {
+        Field field0 = new Field(new SplittableRandom(2048));
+        Field field1 = new Field(new SplittableRandom(2048));
+        field0.start();
+        field1.start();
+        assertArrayEquals(save(field0), save(field1));
+        for (int i = 0; i < 200 && !field0.areLoose(); i++) {
+            int direction = i % 4;
+            assertEquals(field0.play(direction), field1.play(direction));
+            assertArrayEquals(save(field0), save(field1));
+        }
+    }
+
     @Test
     void save() throws IOException {
         Field field = new Field();
@@ -166,6 +181,10 @@ class FieldTest {
         assertEquals(-2, field.getScore(Field.LEFT));
         assertEquals(0, field.getScore(Field.RIGHT));
         assertFalse(field.areLoose());
+        assertFalse(field.isPossible(Field.DOWN));
+        assertFalse(field.isPossible(Field.LEFT));
+        assertTrue(field.isPossible(Field.RIGHT));
+        assertTrue(field.isPossible(Field.UP));
         assertFalse(field.play(Field.LEFT));
         assertTrue(field.play(Field.UP));
         assertEquals(-2, field.getScore(Field.DOWN));
@@ -4,23 +4,16 @@ import org.junit.jupiter.api.Test;
 
 import java.io.*;
 import java.util.Arrays;
+import java.util.SplittableRandom;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class LayerTest {
     @Test
     void get() {
-        assertThrows(ExceptionInInitializerError.class,
-                () -> Layer.getFirstLayer(1, new float[3], new float[3]));
-        assertThrows(ExceptionInInitializerError.class,
-                () -> Layer.getFirstLayer(3, new float[4], new float[3]));
-        assertThrows(ExceptionInInitializerError.class,
-                () -> Layer.getLayer(new float[1], new float[1], new float[3], new float[3]));
-        assertThrows(ExceptionInInitializerError.class,
-                () -> Layer.getLayer(new float[3], new float[4], new float[3], new float[3]));
-        assertThrows(ExceptionInInitializerError.class,
-                () -> Layer.getLayer(new float[3], new float[3], new float[4], new float[3]));
-        Layer layer = Layer.getFirstLayer(4, new float[3], new float[3]);
+        assertThrows(ExceptionInInitializerError.class, () -> Layer.getLayer(1, 3));
+        assertThrows(ExceptionInInitializerError.class, () -> Layer.getLayer(3, 0));
+        Layer layer = Layer.getLayer(4, 3);
         float[] weights = getWeights(layer);
         assertEquals(15, weights.length);
         for (float weight : weights) {
@@ -30,7 +23,7 @@ class LayerTest {
 
     @Test
     void initialize() {
-        Layer layer = Layer.getLayer(new float[9], new float[9], new float[9], new float[9]);
+        Layer layer = Layer.getLayer(9, 9);
         layer.initialize();
         float[] weights = getWeights(layer);
         for (float weight : weights) {
@@ -40,11 +33,11 @@ class LayerTest {
 
     @Test
     void saveAndLoad() throws IOException {
-        Layer layer = Layer.getLayer(new float[5], new float[7], new float[5], new float[7]);
+        Layer layer = Layer.getLayer(5, 7);
         layer.initialize();
         float[] weights = getWeights(layer);
         byte[] state = save(layer);
-        layer = Layer.getLayer(new float[5], new float[7], new float[5], new float[7]);
+        layer = Layer.getLayer(5, 7);
         load(layer, state);
         float[] weights1 = getWeights(layer);
         assertArrayEquals(weights1, weights);
@@ -53,7 +46,7 @@ class LayerTest {
     @Test
     void loadAndSave() throws IOException {
         byte[] state = new byte[]{0, 0, 0, 124, 11, 34, 7, 56, 55, 0, 1, 3, 13, 2, 3, 11, 12, 10, 14, 11, 8, 2, 9, 8};
-        Layer layer = Layer.getFirstLayer(2, new float[2], new float[2]);
+        Layer layer = Layer.getLayer(2, 2);
         load(layer, state);
         assertArrayEquals(state, save(layer));
         float[] weights = getWeights(layer);
@@ -61,49 +54,47 @@ class LayerTest {
     }
 
     @Test
-    void setInputs() {
+    void inputs() {
         float[] input = {0.9f, 0.08f};
         float[] output = {0, 0};
-        Layer layer = Layer.getLayer(new float[2], new float[2], new float[2], new float[2]);
-        assertFalse(layer.setInput(input));
-        layer = Layer.getFirstLayer(3, new float[2], new float[2]);
-        assertFalse(layer.setInput(input));
-        layer = Layer.getFirstLayer(2, output, new float[2]);
+        Layer layer = Layer.getLayer(2, 2);
         layer.initialize();
-        assertTrue(layer.setInput(input));
-        layer.perceive();
+        layer.perceive(input, output, 1);
         float output0 = output[0];
         float output1 = output[1];
-        layer.setInput(new float[]{8, 9});
-        layer.perceive();
+        layer.perceive(new float[]{8, 9}, output, 1);
         assertNotEquals(output0, output[0]);
         assertNotEquals(output1, output[1]);
-        layer.setInput(input);
-        layer.perceive();
+        layer.perceive(input, output, 1);
         assertEquals(output0, output[0]);
         assertEquals(output1, output[1]);
+        // the other output does not change this one
+        float[] otherOutput = new float[2];
+        layer.perceive(new float[]{8, 9}, otherOutput, 1);
+        assertEquals(output0, output[0]);
+        assertNotEquals(output0, otherOutput[0]);
     }
 
     @Test
     void perceive() {
         float[] input = {2, 9};
         float[] output = {0, 0};
-        Layer layer = Layer.getLayer(input, output, new float[2], new float[2]);
-        layer.perceive();
+        Layer layer = Layer.getLayer(2, 2);
+        layer.perceive(input, output, 1);
         assertEquals(0.5, output[0]);
         assertEquals(0.5, output[1]);
         layer.initialize();
-        layer.perceive();
+        layer.perceive(input, output, 1);
         float output0 = output[0];
         float output1 = output[1];
         assertTrue(output0 > 0 && output0 < 1);
         assertTrue(output1 > 0 && output1 < 1);
         input[0] = 0.89f;
-        layer.perceive();
+        layer.perceive(input, output, 1);
         assertNotEquals(output0, output[0]);
         assertNotEquals(output1, output[1]);
         input[0] = 2;
-        layer.perceive();
+        layer.perceive(input, output, 1);
         assertEquals(output0, output[0]);
         assertEquals(output1, output[1]);
     }
@@ -116,7 +107,7 @@ class LayerTest {
         float[] sigma = new float[2];
         float[] hiddenSigma = new float[2];
 
-        Layer layer0 = Layer.getFirstLayer(2, hidden, hiddenSigma);
+        Layer layer0 = Layer.getLayer(2, 2);
         ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
         DataOutputStream dataStream = new DataOutputStream(byteStream);
         dataStream.writeFloat(0.15f);
@@ -134,7 +125,7 @@ class LayerTest {
         assertEquals(0.25f, weights[3]);
         assertEquals(0.35f, weights[5]);
 
-        Layer layer1 = Layer.getLayer(hidden, output, hiddenSigma, sigma);
+        Layer layer1 = Layer.getLayer(2, 2);
         byteStream = new ByteArrayOutputStream();
         dataStream = new DataOutputStream(byteStream);
         dataStream.writeFloat(0.4f);
@@ -150,52 +141,141 @@ class LayerTest {
         assertEquals(0.6f, weights[2]);
         assertEquals(0.55f, weights[4]);
 
-        layer0.setInput(input);
         input[0] = 0.0009f;
-        layer0.perceive();
-        layer1.perceive();
+        layer0.perceive(input, hidden, 1);
+        layer1.perceive(hidden, output, 1);
         assertNotEquals(0.751365065574646, output[0]);
         assertNotEquals(0.7729284763336182, output[1]);
         input[0] = 0.05f;
 
-        layer0.perceive();
+        layer0.perceive(input, hidden, 1);
         assertEquals(0.5932700037956238, hidden[0]);
         assertEquals(0.5968843698501587, hidden[1]);
-        layer1.perceive();
+        layer1.perceive(hidden, output, 1);
         assertEquals(0.751365065574646, output[0]);
         assertEquals(0.7729284763336182, output[1]);
         sigma[0] = output[0] - 0.01f;
         sigma[1] = output[1] - 0.99f;
-        layer1.learn(0.5f);
+        layer1.learn(hidden, output, sigma, hiddenSigma, 0.5f);
         weights = getWeights(layer1);
         assertEquals(0.3589164912700653, weights[0]);
         assertEquals(0.4086661636829376, weights[1]);
         assertEquals(0.5113012790679932, weights[3]);
         assertEquals(0.5613701343536377, weights[4]);
         assertEquals(0.0363503098487854, hiddenSigma[0]);
-        layer0.learn(0.5f);
+        layer0.learn(input, hidden, hiddenSigma, null, 0.5f);
         weights = getWeights(layer0);
         assertEquals(0.14978072047233582, weights[0]);
         assertEquals(0.19956143200397491, weights[1]);
         assertEquals(0.24975115060806274, weights[3]);
         assertEquals(0.29950231313705444, weights[4]);
 
-        layer0.perceive();
-        layer1.perceive();
+        layer0.perceive(input, hidden, 1);
+        layer1.perceive(hidden, output, 1);
         assertEquals(0.05f, input[0]);
 
         for (int i = 0; i < 1000; i++) {
             sigma[0] = output[0] - 0.01f;
             sigma[1] = output[1] - 0.99f;
-            layer1.learn(0.5f);
-            layer0.learn(0.5f);
-            layer0.perceive();
-            layer1.perceive();
+            layer1.learn(hidden, output, sigma, hiddenSigma, 0.5f);
+            layer0.learn(input, hidden, hiddenSigma, null, 0.5f);
+            layer0.perceive(input, hidden, 1);
+            layer1.perceive(hidden, output, 1);
         }
         assertEquals(0.0440303310751915, output[0]);
         assertEquals(0.9573231935501099, output[1]);
     }
 
+    @Test
+    void sameAsOneByOne() throws IOException {
+        float[] input = new float[17];
+        float[] output = new float[40];
+        float[] upSigma = new float[17];
+        float[] sigma = new float[40];
+        Layer layer = Layer.getLayer(17, 40);
+        SplittableRandom random = new SplittableRandom(5);
+        layer.initialize(random);
+        for (int in = 0; in < 17; in++) {
+            input[in] = random.nextFloat();
+        }
+        float[] weights = getWeights(layer); // [out * 18 + in]
+        layer.perceive(input, output, 1);
+        float[] expected = new float[40];
+        for (int out = 0; out < 40; out++) {
+            float net = weights[out * 18 + 17];
+            for (int in = 0; in < 17; in++) {
+                net += weights[out * 18 + in] * input[in];
+            }
+            expected[out] = (float) (1 / (1 + Math.exp(-net)));
+            sigma[out] = random.nextFloat() - 0.5f;
+        }
+        assertArrayEquals(expected, output);
+
+        float[] expectedUpSigma = new float[17];
+        for (int out = 0; out < 40; out++) {
+            float delta = sigma[out] * output[out] * (1 - output[out]);
+            for (int in = 0; in < 17; in++) {
+                expectedUpSigma[in] += delta * weights[out * 18 + in];
+                weights[out * 18 + in] -= 0.1f * delta * input[in];
+            }
+        }
+        layer.learn(input, output, sigma, upSigma, 0.1f);
+        assertArrayEquals(expectedUpSigma, upSigma);
+        assertArrayEquals(weights, getWeights(layer));
+    }
+
+    @Test
+    void accumulate() throws IOException {
+        float[] input = new float[6];
+        float[] output = new float[5];
+        float[] upSigma = new float[6];
+        float[] sigma = new float[5];
+        Layer layer = Layer.getLayer(6, 5);
+        SplittableRandom random = new SplittableRandom(8);
+        layer.initialize(random);
+        Layer copy = Layer.getLayer(6, 5);
+        copy.copy(layer);
+        float[] inputs = new float[12];
+        float[] outputs = new float[10];
+        float[] sigmas = new float[10];
+        float[] upSigmas = new float[12];
+        for (int n = 0; n < 12; n++) {
+            inputs[n] = random.nextFloat();
+        }
+        for (int n = 0; n < 10; n++) {
+            sigmas[n] = random.nextFloat() - 0.5f;
+        }
+        float[] gradients = new float[30];
+        copy.perceive(inputs, outputs, 2);
+        copy.accumulate(inputs, outputs, sigmas, upSigmas, gradients, 2);
+        assertArrayEquals(save(layer), save(copy));
+        copy.update(gradients, 0.5f);
+
+        // the same as learning both samples with the weights before learning
+        float[] before = getWeights(layer);
+        float[] expected = getWeights(layer);
+        for (int sample = 0; sample < 2; sample++) {
+            Layer sampleLayer = Layer.getLayer(6, 5);
+            load(sampleLayer, save(layer));
+            System.arraycopy(inputs, sample * 6, input, 0, 6);
+            sampleLayer.perceive(input, output, 1);
+            assertArrayEquals(Arrays.copyOfRange(outputs, sample * 5, sample * 5 + 5), output);
+            for (int out = 0; out < 5; out++) {
+                sigma[out] = sigmas[sample * 5 + out] / (output[out] * (1 - output[out]));
+            }
+            sampleLayer.learn(input, output, sigma, upSigma, 0.5f);
+            assertArrayEquals(Arrays.copyOfRange(upSigmas, sample * 6, sample * 6 + 6), upSigma, 1e-6f);
+            float[] learned = getWeights(sampleLayer);
+            for (int n = 0; n < expected.length; n++) {
+                expected[n] += learned[n] - before[n];
+            }
+        }
+        assertArrayEquals(expected, getWeights(copy), 1e-6f);
+        Arrays.fill(gradients, 0);
+        copy.update(gradients, 0.5f);
+        assertArrayEquals(expected, getWeights(copy), 1e-6f);
+    }
+
     @Test
     void threeLayerCheck() throws IOException {
         float[] input = {0.5f, 0.1f, 0.9f};
@@ -207,19 +287,18 @@ class LayerTest {
         float[] sigma = new float[2];
         float[] target = {0.087f, 0.1555f};
 
-        Layer layer0 = Layer.getFirstLayer(3, hidden0, hiddenSigma0);
+        Layer layer0 = Layer.getLayer(3, 3);
         layer0.initialize();
-        layer0.setInput(input);
-        Layer layer1 = Layer.getLayer(hidden0, hidden1, hiddenSigma0, hiddenSigma1);
+        Layer layer1 = Layer.getLayer(3, 3);
         layer1.initialize();
-        Layer layer2 = Layer.getLayer(hidden1, output, hiddenSigma1, sigma);
+        Layer layer2 = Layer.getLayer(3, 2);
         layer2.initialize();
 
         float[] error = {1, 1};
         for (int i = 0; i < 100; i++) {
-            layer0.perceive();
-            layer1.perceive();
-            layer2.perceive();
+            layer0.perceive(input, hidden0, 1);
+            layer1.perceive(hidden0, hidden1, 1);
+            layer2.perceive(hidden1, output, 1);
             assertTrue(output[0] > 0 && output[0] < 1);
             assertTrue(output[1] > 0 && output[1] < 1);
             sigma[0] = output[0] - target[0];
@@ -231,9 +310,9 @@ class LayerTest {
             assertTrue(newError <= error[1]);
             error[1] = newError;
             System.out.println(Arrays.toString(error));
-            layer2.learn(0.5f);
-            layer1.learn(0.5f);
-            layer0.learn(0.5f);
+            layer2.learn(hidden1, output, sigma, hiddenSigma1, 0.5f);
+            layer1.learn(hidden0, hidden1, hiddenSigma1, hiddenSigma0, 0.5f);
+            layer0.learn(input, hidden0, hiddenSigma0, null, 0.5f);
         }
         assertTrue(error[0] <= 0.005);
         assertTrue(error[1] <= 0.005);
@@ -244,36 +323,36 @@ class LayerTest {
         byte[] state2 = save(layer2);
         sigma[0] = 0;
         sigma[1] = 0;
-        layer2.learn(0.5f);
-        layer1.learn(0.5f);
-        layer0.learn(0.5f);
+        layer2.learn(hidden1, output, sigma, hiddenSigma1, 0.5f);
+        layer1.learn(hidden0, hidden1, hiddenSigma1, hiddenSigma0, 0.5f);
+        layer0.learn(input, hidden0, hiddenSigma0, null, 0.5f);
         assertFalse(differentArrays(state0, save(layer0)));
         assertArrayEquals(state1, save(layer1));
         assertArrayEquals(state2, save(layer2));
         sigma[0] = 0.0001f;
         sigma[1] = 0;
-        layer2.learn(0.5f);
-        layer1.learn(0.5f);
-        layer0.learn(0.5f);
+        layer2.learn(hidden1, output, sigma, hiddenSigma1, 0.5f);
+        layer1.learn(hidden0, hidden1, hiddenSigma1, hiddenSigma0, 0.5f);
+        layer0.learn(input, hidden0, hiddenSigma0, null, 0.5f);
         assertTrue(differentArrays(state0, save(layer0)));
         assertTrue(differentArrays(state1, save(layer1)));
         assertTrue(differentArrays(state2, save(layer2)));
 
-        layer0.perceive();
-        layer1.perceive();
-        layer2.perceive();
+        layer0.perceive(input, hidden0, 1);
+        layer1.perceive(hidden0, hidden1, 1);
+        layer2.perceive(hidden1, output, 1);
         float out0 = output[0];
         float out1 = output[1];
         input[0] = 0.008f;
-        layer0.perceive();
-        layer1.perceive();
-        layer2.perceive();
+        layer0.perceive(input, hidden0, 1);
+        layer1.perceive(hidden0, hidden1, 1);
+        layer2.perceive(hidden1, output, 1);
         assertNotEquals(out0, output[0]);
         assertNotEquals(out1, output[1]);
         input[0] = 0.5f;
-        layer0.perceive();
-        layer1.perceive();
-        layer2.perceive();
+        layer0.perceive(input, hidden0, 1);
+        layer1.perceive(hidden0, hidden1, 1);
+        layer2.perceive(hidden1, output, 1);
         assertEquals(out0, output[0]);
         assertEquals(out1, output[1]);
 
@@ -0,0 +1,60 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MonteCarloTest {
+
+    @Test
+    void get() {
+        assertThrows(ExceptionInInitializerError.class,
+                () -> new MonteCarlo(ForkJoinPool.commonPool(), 7, 10, 1000, Policy::getRandom, 1));
+    }
+
+    @Test
+    void getDirection() throws IOException {
+        Field field = new Field();
+        DataInputStream stream = new DataInputStream(new ByteArrayInputStream(new byte[]{
+                1, 2, 3, 0,
+                2, 3, 1, 8,
+                1, 2, 3, 6,
+                3, 1, 9, 4}));
+        field.load(stream);
+        stream.close();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        MonteCarlo monteCarlo = new MonteCarlo(pool, 64, 20, 1_000_000_000L, Policy::getRandom, 1);
+        int direction = monteCarlo.getDirection(field);
+        assertTrue(direction == Field.UP || direction == Field.RIGHT);
+        assertTrue(field.play(Field.UP));
+        assertTrue(field.areLoose());
+        field.load(0x1000_0000_0000_0000L);
+        int possibleN = 0;
+        for (int i = 0; i < 4; i++) {
+            if (field.isPossible(i)) {
+                possibleN++;
+            }
+        }
+        assertEquals(2, possibleN);
+        direction = monteCarlo.getDirection(field);
+        assertTrue(field.isPossible(direction));
+        pool.shutdown();
+    }
+
+    @Test
+    void play() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Simulator simulator = new Simulator(1);
+        Simulator.Result random = simulator.play(() -> Policy.getRandom(new SplittableRandom(7)), 4, 9);
+        Simulator.Result monteCarlo = simulator.play(
+                () -> new MonteCarlo(pool, 40, 20, 1_000_000_000L, Policy::getRandom, 7), 4, 9);
+        System.out.println(monteCarlo);
+        assertTrue(monteCarlo.getAverageScore() > random.getAverageScore());
+        simulator.shutdown();
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,87 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NTupleTest {
+
+    @Test
+    void get() {
+        assertThrows(ExceptionInInitializerError.class, () -> NTuple.getNTuple(new int[][]{}));
+        assertThrows(ExceptionInInitializerError.class, () -> NTuple.getNTuple(new int[][]{{0, 1, 2, 3, 4, 5, 6}}));
+        assertThrows(ExceptionInInitializerError.class, () -> NTuple.getNTuple(new int[][]{{0, 16}}));
+        NTuple nTuple = NTuple.getNTuple(new int[][]{{0, 1}, {5}});
+        assertEquals((256 + 16) * 4, save(nTuple).length);
+        assertEquals(0, nTuple.getValue(0x1234_5678_9ABC_DEF1L));
+    }
+
+    @Test
+    void saveAndLoad() throws IOException {
+        NTuple nTuple = NTuple.getNTuple();
+        nTuple.learn(new Field(new SplittableRandom(1)), 0.01f);
+        long board = 0x0000_0001_0012_1232L;
+        float value = nTuple.getValue(board);
+        assertNotEquals(0, value);
+        byte[] state = save(nTuple);
+        NTuple loaded = NTuple.getNTuple();
+        DataInputStream stream = new DataInputStream(new ByteArrayInputStream(state));
+        loaded.load(stream);
+        stream.close();
+        assertEquals(value, loaded.getValue(board));
+        assertArrayEquals(state, save(loaded));
+    }
+
+    @Test
+    void symmetric() {
+        NTuple nTuple = NTuple.getNTuple();
+        Field field = new Field(new SplittableRandom(2));
+        for (int game = 0; game < 20; game++) {
+            nTuple.learn(field, 0.01f);
+        }
+        long board = 0x0000_0001_0012_1232L;
+        float value = nTuple.getValue(board);
+        assertEquals(value, nTuple.getValue(Board.transpose(board)), Math.abs(value) * 1e-5f);
+        assertEquals(value, nTuple.getValue(Board.mirror(Board.flip(board))), Math.abs(value) * 1e-5f);
+        assertEquals(value, nTuple.evaluate(board, 7));
+    }
+
+    @Test
+    void learn() {
+        NTuple nTuple = NTuple.getNTuple();
+        Field field = new Field(new SplittableRandom(3));
+        long firstPoints = 0;
+        for (int game = 0; game < 200; game++) {
+            firstPoints += nTuple.learn(field, 0.0025f);
+        }
+        for (int game = 0; game < 600; game++) {
+            nTuple.learn(field, 0.0025f);
+        }
+        long lastPoints = 0;
+        for (int game = 0; game < 200; game++) {
+            lastPoints += nTuple.learn(field, 0.0025f);
+        }
+        System.out.println("points " + firstPoints / 200 + " -> " + lastPoints / 200);
+        assertTrue(lastPoints > firstPoints);
+        Simulator simulator = new Simulator(2);
+        Simulator.Result result = simulator.play(() -> nTuple, 50, 4);
+        Simulator.Result greedy = simulator.play(Policy::getGreedy, 50, 4);
+        assertTrue(result.getAverageScore() > greedy.getAverageScore());
+        simulator.shutdown();
+    }
+
+    private byte[] save(NTuple nTuple) {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        DataOutputStream dataStream = new DataOutputStream(byteStream);
+        try {
+            nTuple.save(dataStream);
+            dataStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return byteStream.toByteArray();
+    }
+}
@@ -3,7 +3,11 @@ package space.aqoleg.neurogame;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -55,6 +59,65 @@ class NetTest {
         }
     }
 
+    @Test
+    void seed() {
+        Net net0 = Net.getNet(new int[]{4, 5, 3});
+        Net net1 = Net.getNet(new int[]{4, 5, 3});
+        net0.initialize(new SplittableRandom(17));
+        net1.initialize(new SplittableRandom(17));
+        assertArrayEquals(getWeights(net0), getWeights(net1));
+        net1.initialize(new SplittableRandom(18));
+        assertNotEquals(net0.getAnswer(INPUTS[0]), net1.getAnswer(INPUTS[0]));
+    }
+
+    @Test
+    void copy() {
+        Net net = Net.getNet(new int[]{4, 5, 3});
+        net.initialize();
+        Net copy = net.copy();
+        assertArrayEquals(getWeights(net), getWeights(copy));
+        assertEquals(net.getAnswer(INPUTS[2]), copy.getAnswer(INPUTS[2]));
+        copy.learn(INPUTS[2], TARGETS[2], 0.5f, 1, 0);
+        assertNotEquals(net.getAnswer(INPUTS[2]), copy.getAnswer(INPUTS[2]));
+    }
+
+    @Test
+    void setWeights() {
+        Net net = Net.getNet(new int[]{4, 5, 3});
+        net.initialize();
+        Net trained = net.copy();
+        trained.setSigmoid(Sigmoid.TABLE);
+        trained.learn(INPUTS[2], TARGETS[2], 0.5f, 1, 0);
+        assertNotEquals(trained.getAnswer(INPUTS[2]), net.getAnswer(INPUTS[2]));
+        assertFalse(net.setWeights(Net.getNet(new int[]{4, 5, 4})));
+        assertTrue(net.setWeights(trained));
+        assertArrayEquals(getWeights(trained), getWeights(net));
+        assertEquals(trained.getAnswer(INPUTS[2]), net.getAnswer(INPUTS[2]));
+        // the weights are copied
+        trained.learn(INPUTS[2], TARGETS[2], 0.5f, 1, 0);
+        assertNotEquals(trained.getAnswer(INPUTS[2]), net.getAnswer(INPUTS[2]));
+    }
+
+    @Test
+    void version() throws IOException {
+        Net net = Net.getNet(new int[]{4, 5, 3});
+        long version = net.getVersion();
+        net.initialize();
+        assertNotEquals(version, version = net.getVersion());
+        net.getAnswer(INPUTS[0]);
+        assertEquals(version, net.getVersion());
+        net.learn(INPUTS[0], TARGETS[0], 0.5f, 2, 0);
+        assertNotEquals(version, version = net.getVersion());
+        net.learn(INPUTS, TARGETS, 0.5f, 3);
+        assertNotEquals(version, version = net.getVersion());
+        net.setSigmoid(Sigmoid.TABLE);
+        assertNotEquals(version, version = net.getVersion());
+        load(net, save(net));
+        assertNotEquals(version, version = net.getVersion());
+        net.setWeights(net.copy());
+        assertNotEquals(version, net.getVersion());
+    }
+
     @Test
     void saveAndLoad() throws IOException {
         Net net = Net.getNet(new int[]{4, 5, 3});
@@ -71,6 +134,44 @@ class NetTest {
         assertArrayEquals(state, save(net));
     }
 
+    @Test
+    void modelFormat() throws IOException {
+        Net net = Net.getNet(new int[]{17, 40, 20, 8});
+        net.initialize(new SplittableRandom(12));
+        net.setSigmoid(Sigmoid.TABLE);
+        ByteBuffer buffer = ByteBuffer.allocate(net.getModelSize() + 3);
+        buffer.put(new byte[]{1, 2, 3});
+        net.save(buffer);
+        assertEquals(buffer.capacity(), buffer.position());
+        assertEquals(0, net.getModelSize() % 64);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(Net.MAGIC, buffer.getInt(3));
+        assertEquals(Net.VERSION, buffer.getInt(7));
+        assertEquals(Sigmoid.TABLE, buffer.getInt(11));
+        assertEquals(4, buffer.getInt(15));
+        assertEquals(40, buffer.getInt(23));
+
+        Net loaded = getNet(buffer, 3);
+        assertArrayEquals(getWeights(net), getWeights(loaded));
+        assertEquals(net.getAnswer(BIG_INPUTS[1]), loaded.getAnswer(BIG_INPUTS[1]));
+        Net copy = loaded.copy();
+        copy.setSigmoid(Sigmoid.EXACT);
+        assertNotEquals(net.getAnswer(BIG_INPUTS[1]), copy.getAnswer(BIG_INPUTS[1]));
+
+        // broken weight, other map, other version
+        Net other = Net.getNet(new int[]{17, 40, 20, 8});
+        buffer.put(3 + 64 + 100, (byte) (buffer.get(3 + 64 + 100) + 1));
+        assertThrows(IOException.class, () -> other.load(buffer.position(3)));
+        assertArrayEquals(getWeights(Net.getNet(new int[]{17, 40, 20, 8})), getWeights(other));
+        buffer.put(3 + 64 + 100, (byte) (buffer.get(3 + 64 + 100) - 1));
+        other.load(buffer.position(3));
+        assertThrows(IOException.class, () -> Net.getNet(new int[]{17, 40, 20, 9}).load(buffer.position(3)));
+        assertThrows(IOException.class, () -> Net.getNet(new int[]{17, 40}).load(buffer.position(3)));
+        buffer.putInt(7, 2);
+        assertThrows(IOException.class, () -> other.load(buffer.position(3)));
+        assertThrows(IOException.class, () -> other.load(ByteBuffer.allocate(8)));
+    }
+
     @Test
     void getAnswer() {
         Net net = Net.getNet(new int[]{4, 9});
@@ -87,6 +188,22 @@ class NetTest {
         assertEquals(0, net.getAnswer(new float[]{9, 9}));
     }
 
+    @Test
+    void getAnswers() {
+        Net net = Net.getNet(new int[]{4, 9, 5});
+        net.initialize(new SplittableRandom(3));
+        float[] answers = new float[6];
+        assertTrue(net.getAnswers(INPUTS, answers));
+        for (int set = 0; set < 6; set++) {
+            assertEquals(net.getAnswer(INPUTS[set]), answers[set]);
+        }
+        float[] answer = new float[1];
+        assertTrue(net.getAnswers(new float[][]{INPUTS[4]}, answer));
+        assertEquals(answers[4], answer[0]);
+        assertFalse(net.getAnswers(INPUTS, new float[5]));
+        assertFalse(net.getAnswers(new float[][]{INPUTS[0], {9, 9}}, answers));
+    }
+
     @Test
     void learn() {
         Net net = Net.getNet(new int[]{4, 20, 8, 4});
@@ -97,6 +214,87 @@ class NetTest {
         learnNet(new int[]{4, 60, 40, 12});
     }
 
+    @Test
+    void sigmoid() {
+        Net net = Net.getNet(new int[]{17, 40, 20, 8});
+        net.initialize(new SplittableRandom(2));
+        float[] exact = new float[BIG_INPUTS.length];
+        for (int set = 0; set < BIG_INPUTS.length; set++) {
+            exact[set] = net.getAnswer(BIG_INPUTS[set]);
+        }
+        assertFalse(net.setSigmoid(5));
+        assertTrue(net.setSigmoid(Sigmoid.TABLE));
+        Net copy = net.copy();
+        for (int set = 0; set < BIG_INPUTS.length; set++) {
+            assertEquals(exact[set], net.getAnswer(BIG_INPUTS[set]), 1e-4f);
+            assertEquals(net.getAnswer(BIG_INPUTS[set]), copy.getAnswer(BIG_INPUTS[set]));
+        }
+        net.setSigmoid(Sigmoid.RATIONAL);
+        for (int set = 0; set < BIG_INPUTS.length; set++) {
+            assertEquals(exact[set], net.getAnswer(BIG_INPUTS[set]), 1e-3f);
+        }
+        net.setSigmoid(Sigmoid.EXACT);
+        for (int set = 0; set < BIG_INPUTS.length; set++) {
+            assertEquals(exact[set], net.getAnswer(BIG_INPUTS[set]));
+        }
+    }
+
+    @Test
+    void threads() throws InterruptedException {
+        Net net = Net.getNet(new int[]{17, 40, 20, 8});
+        net.initialize(new SplittableRandom(4));
+        float[][] inputs = new float[64][17];
+        SplittableRandom random = new SplittableRandom(5);
+        for (float[] input : inputs) {
+            for (int in = 0; in < 17; in++) {
+                input[in] = random.nextFloat();
+            }
+        }
+        float[] expected = new float[64];
+        net.getAnswers(inputs, expected);
+        AtomicBoolean same = new AtomicBoolean(true);
+        Thread[] threads = new Thread[4];
+        for (int threadN = 0; threadN < threads.length; threadN++) {
+            int first = threadN;
+            threads[threadN] = new Thread(() -> {
+                float[] answers = new float[64];
+                for (int i = 0; i < 200; i++) {
+                    int set = (first + i) % 64;
+                    if (net.getAnswer(inputs[set]) != expected[set]) {
+                        same.set(false);
+                    }
+                    net.getAnswers(inputs, answers);
+                    if (!Arrays.equals(expected, answers)) {
+                        same.set(false);
+                    }
+                }
+            });
+            threads[threadN].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(same.get());
+    }
+
+    @Test
+    void learnBatch() {
+        Net net = Net.getNet(new int[]{4, 20, 8, 4});
+        net.initialize(new SplittableRandom(6));
+        assertEquals(-1, net.learn(INPUTS, new float[5], 0.5f, 2));
+        assertEquals(-1, net.learn(INPUTS, TARGETS, 0.5f, 0));
+        assertEquals(-1, net.learn(new float[][]{{9, 8}}, new float[1], 0.5f, 2));
+        float error = net.learn(INPUTS, TARGETS, 2, 4);
+        assertTrue(error > 0.001f);
+        for (int epoch = 0; epoch < 5000; epoch++) {
+            error = net.learn(INPUTS, TARGETS, 2, 4);
+        }
+        assertTrue(error < 0.001f);
+        for (int set = 0; set < 6; set++) {
+            assertEquals(TARGETS[set], net.getAnswer(INPUTS[set]), 0.05f);
+        }
+    }
+
     @Test
     void big() {
         Net net = Net.getNet(new int[]{17, 40, 20, 8});
@@ -141,6 +339,13 @@ class NetTest {
         return byteStream.toByteArray();
     }
 
+    private Net getNet(ByteBuffer buffer, int position) throws IOException {
+        Net net = Net.getNet(new int[]{17, 40, 20, 8});
+        buffer.position(position);
+        net.load(buffer);
+        return net;
+    }
+
     private void load(Net net, byte[] state) throws IOException {
         DataInputStream stream = new DataInputStream(new ByteArrayInputStream(state));
         net.load(stream);
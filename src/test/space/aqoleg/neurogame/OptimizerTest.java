@@ -0,0 +1,164 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimizerTest {
+
+    @Test
+    void get() {
+        assertThrows(ExceptionInInitializerError.class, () -> Optimizer.getOptimizer(4, new int[]{3}));
+        assertEquals(Optimizer.ADAM, Optimizer.getOptimizer(Optimizer.ADAM, new int[]{3}).getType());
+        Net net = Net.getNet(new int[]{4, 5});
+        assertEquals(Optimizer.SGD, net.getOptimizer());
+        assertFalse(net.setOptimizer(-1));
+        assertTrue(net.setOptimizer(Optimizer.NESTEROV));
+        assertEquals(Optimizer.NESTEROV, net.getOptimizer());
+        assertEquals(Optimizer.NESTEROV, net.copy().getOptimizer());
+    }
+
+    @Test
+    void steps() {
+        float[] gradients = {1, -2};
+        Optimizer sgd = Optimizer.getOptimizer(Optimizer.SGD, new int[]{2});
+        sgd.nextStep();
+        sgd.getSteps(0, gradients);
+        assertArrayEquals(new float[]{1, -2}, gradients);
+        assertEquals(1, sgd.getRate());
+
+        Optimizer momentum = Optimizer.getOptimizer(Optimizer.MOMENTUM, new int[]{2});
+        momentum.nextStep();
+        momentum.getSteps(0, gradients);
+        assertArrayEquals(new float[]{1, -2}, gradients);
+        gradients = new float[]{1, -2};
+        momentum.nextStep();
+        momentum.getSteps(0, gradients);
+        assertArrayEquals(new float[]{1.9f, -3.8f}, gradients, 1e-6f);
+
+        Optimizer nesterov = Optimizer.getOptimizer(Optimizer.NESTEROV, new int[]{2});
+        gradients = new float[]{1, -2};
+        nesterov.nextStep();
+        nesterov.getSteps(0, gradients);
+        assertArrayEquals(new float[]{1.9f, -3.8f}, gradients, 1e-6f);
+
+        // the first steps of adam are about 1 for any gradient
+        Optimizer adam = Optimizer.getOptimizer(Optimizer.ADAM, new int[]{2});
+        gradients = new float[]{0.001f, -200};
+        adam.nextStep();
+        adam.getSteps(0, gradients);
+        assertArrayEquals(new float[]{1, -1}, gradients, 1e-4f);
+    }
+
+    @Test
+    void converge() {
+        float[][] inputs = getInputs();
+        float[] targets = getTargets();
+        int sgdEpochs = getEpochs(Optimizer.SGD, inputs, targets);
+        assertTrue(getEpochs(Optimizer.MOMENTUM, inputs, targets) < sgdEpochs);
+        assertTrue(getEpochs(Optimizer.NESTEROV, inputs, targets) < sgdEpochs);
+        assertTrue(getEpochs(Optimizer.ADAM, inputs, targets) < sgdEpochs);
+    }
+
+    @Test
+    void meanGradients() {
+        // the batch of the same inputs makes the same step as one input
+        float[][] inputs = getInputs();
+        float[][] batch = new float[64][];
+        float[] batchTargets = new float[64];
+        for (int n = 0; n < batch.length; n++) {
+            batch[n] = inputs[0];
+            batchTargets[n] = 0.9f;
+        }
+        for (int type = Optimizer.SGD; type <= Optimizer.ADAM; type++) {
+            Net one = getNet();
+            one.setOptimizer(type);
+            Net net = getNet();
+            net.setOptimizer(type);
+            for (int epoch = 0; epoch < 3; epoch++) {
+                one.learn(new float[][]{inputs[0]}, new float[]{0.9f}, 1, 1);
+                net.learn(batch, batchTargets, 1, 64);
+            }
+            assertEquals(one.getAnswer(inputs[1]), net.getAnswer(inputs[1]), 1e-4f);
+        }
+    }
+
+    @Test
+    void saveAndLoad() throws IOException {
+        float[][] inputs = getInputs();
+        float[] targets = getTargets();
+        for (int type = Optimizer.SGD; type <= Optimizer.ADAM; type++) {
+            Net net = getNet();
+            net.setOptimizer(type);
+            for (int epoch = 0; epoch < 5; epoch++) {
+                net.learn(inputs, targets, 1, 8);
+            }
+            // checkpoint
+            ByteBuffer model = ByteBuffer.allocate(net.getModelSize());
+            net.save(model);
+            model.flip();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream stream = new DataOutputStream(bytes);
+            net.saveOptimizer(stream);
+            stream.close();
+            Net loaded = getNet();
+            loaded.load(model);
+            loaded.loadOptimizer(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(type, loaded.getOptimizer());
+            Net copy = net.copy();
+            // continue learning
+            for (int epoch = 0; epoch < 5; epoch++) {
+                float error = net.learn(inputs, targets, 1, 8);
+                assertEquals(error, loaded.learn(inputs, targets, 1, 8));
+                assertEquals(error, copy.learn(inputs, targets, 1, 8));
+            }
+            assertEquals(net.getAnswer(inputs[0]), loaded.getAnswer(inputs[0]));
+            assertEquals(net.getAnswer(inputs[0]), copy.getAnswer(inputs[0]));
+        }
+        byte[] bytes = {0, 0, 0, 9};
+        Net net = getNet();
+        assertThrows(IOException.class, () -> net.loadOptimizer(new DataInputStream(new ByteArrayInputStream(bytes))));
+    }
+
+    // Return number of epochs till the mean error < 0.001, or 1000
+    private int getEpochs(int type, float[][] inputs, float[] targets) {
+        Net net = getNet();
+        net.setOptimizer(type);
+        for (int epoch = 0; epoch < 1000; epoch++) {
+            if (net.learn(inputs, targets, 1, 8) < 0.001f) {
+                return epoch;
+            }
+        }
+        return 1000;
+    }
+
+    private Net getNet() {
+        Net net = Net.getNet(new int[]{17, 40, 20, 8});
+        net.initialize(new SplittableRandom(11));
+        return net;
+    }
+
+    private float[][] getInputs() {
+        SplittableRandom random = new SplittableRandom(12);
+        float[][] inputs = new float[64][17];
+        for (float[] input : inputs) {
+            for (int n = 0; n < input.length; n++) {
+                input[n] = random.nextFloat();
+            }
+        }
+        return inputs;
+    }
+
+    private float[] getTargets() {
+        float[][] inputs = getInputs();
+        float[] targets = new float[inputs.length];
+        for (int n = 0; n < targets.length; n++) {
+            targets[n] = 0.2f + 0.3f * (inputs[n][0] + inputs[n][1] * inputs[n][2]);
+        }
+        return targets;
+    }
+}
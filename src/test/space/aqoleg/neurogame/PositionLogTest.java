@@ -0,0 +1,147 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionLogTest {
+    private static final File FILE = new File(new File(System.getProperty("user.home"), "Documents"), "neurogame.testlog");
+
+    @Test
+    void addAndRead() throws IOException {
+        FILE.delete();
+        PositionLog log = new PositionLog(FILE);
+        for (int n = 0; n < 1000; n++) {
+            add(log, n);
+        }
+        // the write buffer is not flushed
+        assertEquals(768, log.size());
+        log.flush();
+        assertEquals(1000, log.size());
+        ReplayBuffer chunk = new ReplayBuffer(300, ReplayBuffer.RING, false);
+        assertEquals(300, log.read(0, chunk));
+        check(chunk, 0, 0);
+        check(chunk, 299, 299);
+        assertEquals(100, log.read(900, chunk));
+        assertEquals(100, chunk.size());
+        check(chunk, 99, 999);
+        assertEquals(0, log.read(1000, chunk));
+        assertEquals(0, chunk.size());
+        add(log, 1000);
+        log.close();
+
+        // appended after reopening
+        log = new PositionLog(FILE);
+        assertEquals(1001, log.size());
+        add(log, 1001);
+        log.close();
+        log = new PositionLog(FILE);
+        assertEquals(1002, log.size());
+        assertEquals(2, log.read(1000, chunk));
+        check(chunk, 0, 1000);
+        check(chunk, 1, 1001);
+        log.close();
+        assertTrue(FILE.delete());
+    }
+
+    @Test
+    void notLog() throws IOException {
+        DataOutputStream stream = new DataOutputStream(new FileOutputStream(FILE));
+        stream.writeInt(Net.MAGIC);
+        stream.writeInt(PositionLog.VERSION);
+        stream.close();
+        assertThrows(IOException.class, () -> new PositionLog(FILE));
+        assertTrue(FILE.delete());
+    }
+
+    @Test
+    void brain() throws IOException {
+        FILE.delete();
+        PositionLog log = new PositionLog(FILE);
+        Field field = new Field();
+        field.start();
+        Brain player = new Brain(field);
+        player.initialize();
+        for (int move = 0; move < 5; move++) {
+            player.perceive();
+            assertTrue(player.add(Field.LEFT));
+        }
+        assertEquals(0, log.size());
+        player.setLog(log);
+        player.perceive();
+        assertTrue(player.add(Field.UP));
+        player.learn(4);
+        // the move is flushed before learning
+        assertEquals(1, log.size());
+        assertEquals(6, player.getMovesN());
+        ReplayBuffer chunk = new ReplayBuffer(4, ReplayBuffer.RING, false);
+        assertEquals(1, log.read(0, chunk));
+        assertEquals(Field.UP, chunk.getDirection(0));
+        // the log is learned in background without the recorded moves
+        player.learn(Runnable::run, epoch -> {
+        }).join();
+        // the log is learned in parallel
+        float accuracy = player.learnParallel(2);
+        assertTrue(accuracy >= 0 && accuracy <= 1);
+        assertEquals(accuracy, player.getAccuracy());
+        log.close();
+        assertTrue(FILE.delete());
+    }
+
+    @Test
+    void reproducible() throws IOException {
+        FILE.delete();
+        File file = new File(new File(System.getProperty("user.home"), "Documents"), "neurogame.test");
+        PositionLog log = new PositionLog(FILE);
+        Field field = new Field(new SplittableRandom(5));
+        field.start();
+        Brain player = new Brain(field);
+        player.initialize();
+        player.setLog(log);
+        Policy teacher = Policy.getGreedy();
+        for (int move = 0; move < 40; move++) {
+            player.perceive();
+            int direction = teacher.getDirection(field);
+            assertTrue(player.add(direction));
+            field.play(direction);
+        }
+        assertTrue(player.save(file));
+        float[] answers = new float[4];
+        for (int threadsN = 1; threadsN <= 3; threadsN += 2) {
+            Brain brain = new Brain(field);
+            assertTrue(brain.load(file));
+            brain.setLog(log);
+            brain.learn(4, threadsN, new SplittableRandom(6));
+            brain.perceive();
+            for (int direction = 0; direction < 4; direction++) {
+                if (threadsN == 1) {
+                    answers[direction] = brain.getAnswer(direction);
+                } else {
+                    assertEquals(answers[direction], brain.getAnswer(direction));
+                }
+            }
+        }
+        log.close();
+        assertTrue(FILE.delete());
+        assertTrue(file.delete());
+    }
+
+    private void add(PositionLog log, int n) throws IOException {
+        log.add(new long[]{n, -n, 0, Long.MAX_VALUE}, new int[]{n, -2, 0, 1}, n & 3);
+    }
+
+    private void check(ReplayBuffer chunk, int positionN, int n) {
+        assertEquals(n, chunk.getNextField(positionN, 0));
+        assertEquals(-n, chunk.getNextField(positionN, 1));
+        assertEquals(Long.MAX_VALUE, chunk.getNextField(positionN, 3));
+        assertEquals(n, chunk.getScore(positionN, 0));
+        assertEquals(-2, chunk.getScore(positionN, 1));
+        assertEquals(n & 3, chunk.getDirection(positionN));
+    }
+}
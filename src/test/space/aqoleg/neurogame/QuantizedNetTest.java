@@ -0,0 +1,77 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedNetTest {
+
+    @Test
+    void getAnswer() {
+        Net net = Net.getNet(new int[]{17, 40, 20, 8});
+        net.initialize(new SplittableRandom(1));
+        QuantizedNet quantizedNet = net.quantize();
+        float[][] inputs = getInputs(50, 17, 2);
+        float[] answers = new float[50];
+        assertTrue(quantizedNet.getAnswers(inputs, answers));
+        for (int set = 0; set < 50; set++) {
+            assertEquals(net.getAnswer(inputs[set]), quantizedNet.getAnswer(inputs[set]), 1e-3f);
+            assertEquals(quantizedNet.getAnswer(inputs[set]), answers[set]);
+        }
+        assertEquals(0, quantizedNet.getAnswer(new float[3]));
+        assertFalse(quantizedNet.getAnswers(inputs, new float[3]));
+        assertFalse(quantizedNet.getAnswers(new float[][]{new float[3]}, answers));
+        // zero input and zero weights
+        assertEquals(0.5f, Net.getNet(new int[]{3, 2}).quantize().getAnswer(new float[3]), 1e-6f);
+    }
+
+    @Test
+    void bigLayer() {
+        Net net = Net.getNet(new int[]{2000, 3});
+        net.initialize(new SplittableRandom(2));
+        float[][] inputs = getInputs(5, 2000, 3);
+        for (int in = 0; in < 2000; in++) {
+            inputs[0][in] = 0.01f; // max values with the same sign
+        }
+        QuantizedNet quantizedNet = net.quantize();
+        for (float[] input : inputs) {
+            assertEquals(net.getAnswer(input), quantizedNet.getAnswer(input), 1e-3f);
+        }
+    }
+
+    @Test
+    void sameMoves() {
+        // 8 bit brain chooses the same move as the float brain for more than 98% of the positions
+        Field field = new Field(new SplittableRandom(3));
+        Brain brain = new Brain(field);
+        brain.initialize();
+        Brain quantizedBrain = brain.quantize();
+        Policy greedy = Policy.getGreedy();
+        int sameN = 0;
+        int positionsN = 0;
+        for (int game = 0; game < 5; game++) {
+            field.start();
+            while (!field.areLoose()) {
+                if (brain.getDirection(field) == quantizedBrain.getDirection(field)) {
+                    sameN++;
+                }
+                positionsN++;
+                field.play(greedy.getDirection(field));
+            }
+        }
+        assertTrue(sameN > positionsN * 0.98, sameN + " of " + positionsN);
+    }
+
+    private float[][] getInputs(int inputsN, int valuesN, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] inputs = new float[inputsN][valuesN];
+        for (float[] input : inputs) {
+            for (int n = 0; n < valuesN; n++) {
+                input[n] = random.nextFloat() * 2 - 0.5f;
+            }
+        }
+        return inputs;
+    }
+}
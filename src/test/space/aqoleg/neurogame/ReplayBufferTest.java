@@ -0,0 +1,106 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayBufferTest {
+
+    @Test
+    void get() {
+        assertThrows(ExceptionInInitializerError.class, () -> new ReplayBuffer(0, ReplayBuffer.RING, false));
+        assertThrows(ExceptionInInitializerError.class, () -> new ReplayBuffer(Integer.MAX_VALUE, ReplayBuffer.RING, false));
+        assertThrows(ExceptionInInitializerError.class, () -> new ReplayBuffer(10, 2, false));
+        ReplayBuffer buffer = new ReplayBuffer(10, ReplayBuffer.RESERVOIR, true);
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getAddedN());
+    }
+
+    @Test
+    void add() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            ReplayBuffer buffer = new ReplayBuffer(5000, ReplayBuffer.RING, offHeap);
+            // grows over the first memory
+            for (int n = 0; n < 3000; n++) {
+                assertEquals(n, add(buffer, n));
+            }
+            assertEquals(3000, buffer.size());
+            for (int n = 0; n < 3000; n++) {
+                check(buffer, n, n);
+            }
+            ReplayBuffer copy = buffer.copy();
+            add(copy, 3000);
+            assertEquals(3000, buffer.size());
+            assertEquals(3001, copy.size());
+            check(copy, 2999, 2999);
+            check(copy, 3000, 3000);
+            buffer.clear();
+            assertEquals(0, buffer.size());
+            assertEquals(0, add(buffer, 7));
+            check(buffer, 0, 7);
+        }
+    }
+
+    @Test
+    void ring() {
+        ReplayBuffer buffer = new ReplayBuffer(3, ReplayBuffer.RING, false);
+        for (int n = 0; n < 5; n++) {
+            add(buffer, n);
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(5, buffer.getAddedN());
+        // 3 and 4 replace the oldest 0 and 1
+        check(buffer, 0, 3);
+        check(buffer, 1, 4);
+        check(buffer, 2, 2);
+        assertEquals(2, add(buffer, 5));
+    }
+
+    @Test
+    void reservoir() {
+        int[] counts = new int[100];
+        SplittableRandom random = new SplittableRandom(5);
+        for (int i = 0; i < 200; i++) {
+            ReplayBuffer buffer = new ReplayBuffer(10, ReplayBuffer.RESERVOIR, false, random);
+            for (int n = 0; n < 100; n++) {
+                int positionN = add(buffer, n);
+                assertTrue(positionN >= -1 && positionN < 10);
+            }
+            assertEquals(10, buffer.size());
+            assertEquals(100, buffer.getAddedN());
+            for (int positionN = 0; positionN < 10; positionN++) {
+                counts[(int) buffer.getNextField(positionN, 0)]++;
+            }
+        }
+        // each of 100 moves is kept with probability 0.1, 20 times of 200
+        int old = 0;
+        int young = 0;
+        for (int n = 0; n < 50; n++) {
+            old += counts[n];
+            young += counts[n + 50];
+        }
+        assertEquals(2000, old + young);
+        assertTrue(old > 800 && young > 800);
+    }
+
+    // Add position of the move n, return positionN
+    private int add(ReplayBuffer buffer, int n) {
+        long[] nextFields = {n, n + 1, Long.MIN_VALUE + n, -1};
+        int[] scores = {n, -2, 4, n * 2};
+        return buffer.add(nextFields, scores, 0);
+    }
+
+    private void check(ReplayBuffer buffer, int positionN, int n) {
+        assertEquals(n, buffer.getNextField(positionN, 0));
+        assertEquals(n + 1, buffer.getNextField(positionN, 1));
+        assertEquals(Long.MIN_VALUE + n, buffer.getNextField(positionN, 2));
+        assertEquals(-1, buffer.getNextField(positionN, 3));
+        assertEquals(n, buffer.getScore(positionN, 0));
+        assertEquals(-2, buffer.getScore(positionN, 1));
+        assertEquals(4, buffer.getScore(positionN, 2));
+        assertEquals(n * 2, buffer.getScore(positionN, 3));
+        assertEquals(0, buffer.getDirection(positionN));
+    }
+}
@@ -0,0 +1,46 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SigmoidTest {
+
+    @Test
+    void exact() {
+        assertEquals(0.5f, Sigmoid.get(Sigmoid.EXACT, 0));
+        assertEquals((float) (1 / (1 + Math.exp(-0.3))), Sigmoid.get(Sigmoid.EXACT, 0.3f));
+        assertTrue(Sigmoid.isCorrect(Sigmoid.RATIONAL));
+        assertFalse(Sigmoid.isCorrect(3));
+    }
+
+    @Test
+    void errors() {
+        checkError(Sigmoid.TABLE, 5e-6f);
+        checkError(Sigmoid.RATIONAL, 6e-5f);
+    }
+
+    @Test
+    void apply() {
+        float[] values = {-3, 0.25f, 7, 100};
+        float[] expected = new float[4];
+        for (int n = 0; n < 3; n++) {
+            expected[n] = Sigmoid.get(Sigmoid.TABLE, values[n]);
+        }
+        expected[3] = 100;
+        Sigmoid.apply(Sigmoid.TABLE, values, 3);
+        assertArrayEquals(expected, values);
+    }
+
+    private void checkError(int sigmoid, float maxError) {
+        for (float net = -40; net <= 40; net += 0.0007f) {
+            float exact = Sigmoid.get(Sigmoid.EXACT, net);
+            float out = Sigmoid.get(sigmoid, net);
+            assertEquals(exact, out, maxError);
+            assertTrue(out > 0 && out < 1);
+        }
+        assertEquals(0.5f, Sigmoid.get(sigmoid, 0), 1e-7f);
+        assertEquals(1, Sigmoid.get(sigmoid, Float.MAX_VALUE), maxError);
+        assertEquals(0, Sigmoid.get(sigmoid, -Float.MAX_VALUE), maxError);
+    }
+}
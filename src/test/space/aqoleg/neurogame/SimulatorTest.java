@@ -0,0 +1,48 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatorTest {
+
+    @Test
+    void play() {
+        Simulator simulator = new Simulator(4);
+        Simulator.Result result = simulator.play(() -> Policy.getRandom(new SplittableRandom()), 100, 1);
+        assertEquals(100, result.getGamesN());
+        assertTrue(result.getMovesN() > 100);
+        assertTrue(result.getGamesPerSecond() > 0);
+        assertTrue(result.getAverageScore() > 4);
+        int gamesN = 0;
+        for (int cell = 0; cell <= Board.MAX_CELL; cell++) {
+            gamesN += result.getMaxCellCount(cell);
+        }
+        assertEquals(100, gamesN);
+        assertEquals(0, result.getMaxCellCount(0));
+        simulator.shutdown();
+    }
+
+    @Test
+    void seed() {
+        Simulator simulator = new Simulator(3);
+        Simulator.Result result0 = simulator.play(Policy::getGreedy, 50, 2048);
+        Simulator.Result result1 = simulator.play(Policy::getGreedy, 50, 2048);
+        assertEquals(result0.getMovesN(), result1.getMovesN());
+        assertEquals(result0.getAverageScore(), result1.getAverageScore());
+        simulator.shutdown();
+    }
+
+    @Test
+    void brain() {
+        Brain brain = new Brain(new Field());
+        brain.initialize();
+        Simulator simulator = new Simulator(2);
+        Simulator.Result result = simulator.play(brain::copy, 20, 3);
+        assertEquals(20, result.getGamesN());
+        assertTrue(result.getMovesN() > 20);
+        simulator.shutdown();
+    }
+}
@@ -0,0 +1,98 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrainerTest {
+
+    @Test
+    void get() {
+        Net net = Net.getNet(new int[]{4, 5});
+        assertThrows(ExceptionInInitializerError.class, () -> new Trainer(net, 2, 0));
+        Trainer trainer = new Trainer(net, 2, 3);
+        assertEquals(-1, trainer.learn(new float[][]{{1, 2, 3, 4}}, new float[2], 0.5f, 4));
+        assertEquals(-1, trainer.learn(new float[][]{{1, 2, 3}}, new float[1], 0.5f, 4));
+        assertEquals(-1, trainer.learn(new float[][]{{1, 2, 3, 4}}, new float[1], 0.5f, 0));
+        trainer.shutdown();
+    }
+
+    @Test
+    void sameAsNet() throws IOException {
+        float[][] inputs = getInputs(40, 17);
+        float[] targets = getTargets(40);
+        Net net = getNet();
+        Net trainerNet = getNet();
+        Trainer trainer = new Trainer(trainerNet, 3, 16);
+        for (int epoch = 0; epoch < 5; epoch++) {
+            assertEquals(net.learn(inputs, targets, 1, 16), trainer.learn(inputs, targets, 1, 16));
+        }
+        trainer.shutdown();
+        assertArrayEquals(save(net), save(trainerNet));
+    }
+
+    @Test
+    void threads() throws IOException {
+        float[][] inputs = getInputs(300, 17);
+        float[] targets = getTargets(300);
+        byte[] expected = null;
+        float expectedError = 0;
+        for (int threadsN = 1; threadsN <= 4; threadsN++) {
+            Net net = getNet();
+            Trainer trainer = new Trainer(net, threadsN, 5);
+            float firstError = trainer.learn(inputs, targets, 2, 64);
+            float error = 0;
+            for (int epoch = 0; epoch < 30; epoch++) {
+                error = trainer.learn(inputs, targets, 2, 64);
+            }
+            trainer.shutdown();
+            assertTrue(error < firstError);
+            if (expected == null) {
+                expected = save(net);
+                expectedError = error;
+            } else {
+                assertArrayEquals(expected, save(net));
+                assertEquals(expectedError, error);
+            }
+        }
+    }
+
+    private Net getNet() {
+        Net net = Net.getNet(new int[]{17, 40, 20, 8});
+        net.initialize(new SplittableRandom(9));
+        return net;
+    }
+
+    private float[][] getInputs(int inputsN, int valuesN) {
+        SplittableRandom random = new SplittableRandom(10);
+        float[][] inputs = new float[inputsN][valuesN];
+        for (float[] input : inputs) {
+            for (int n = 0; n < valuesN; n++) {
+                input[n] = random.nextFloat();
+            }
+        }
+        return inputs;
+    }
+
+    private float[] getTargets(int inputsN) {
+        SplittableRandom random = new SplittableRandom(11);
+        float[] targets = new float[inputsN];
+        for (int n = 0; n < inputsN; n++) {
+            targets[n] = random.nextFloat();
+        }
+        return targets;
+    }
+
+    private byte[] save(Net net) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        DataOutputStream dataStream = new DataOutputStream(byteStream);
+        net.save(dataStream);
+        dataStream.close();
+        return byteStream.toByteArray();
+    }
+}
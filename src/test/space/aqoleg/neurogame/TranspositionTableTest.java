@@ -0,0 +1,87 @@
+package space.aqoleg.neurogame;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TranspositionTableTest {
+
+    @Test
+    void get() {
+        assertThrows(ExceptionInInitializerError.class, () -> new TranspositionTable(1, false));
+        TranspositionTable table = new TranspositionTable(4, false);
+        assertTrue(Float.isNaN(table.get(0x1234, 0)));
+        table.put(0x1234, 2, 0.75f);
+        assertEquals(0.75f, table.get(0x1234, 2));
+        assertEquals(0.75f, table.get(0x1234, 1));
+        assertTrue(Float.isNaN(table.get(0x1234, 3)));
+        table.put(0x1234, 1, 0.5f);
+        assertEquals(0.75f, table.get(0x1234, 2));
+        table.put(0x1234, 3, 0.25f);
+        assertEquals(0.25f, table.get(0x1234, 3));
+        assertTrue(Float.isNaN(table.get(Board.mirror(0x1234), 0)));
+        assertEquals(4, table.getHits());
+        assertEquals(3, table.getMisses());
+    }
+
+    @Test
+    void symmetric() {
+        TranspositionTable table = new TranspositionTable(4, true);
+        table.put(0x1234, 2, 0.75f);
+        assertEquals(0.75f, table.get(Board.mirror(0x1234), 2));
+        assertEquals(0.75f, table.get(Board.transpose(0x1234), 2));
+        assertEquals(0.75f, table.get(Board.flip(0x1234), 2));
+    }
+
+    @Test
+    void replace() {
+        TranspositionTable table = new TranspositionTable(2, false); // 2 buckets with 2 entries
+        for (long field = 1; field <= 64; field++) {
+            table.put(field, 5, field);
+        }
+        table.nextAge();
+        table.put(1000, 1, 1000);
+        table.put(1001, 1, 1001);
+        table.put(1002, 1, 1002);
+        table.put(1003, 1, 1003);
+        // deep entries from the old age are replaced by less deep entries from the new age
+        int found = 0;
+        for (long field = 1000; field <= 1003; field++) {
+            if (table.get(field, 1) == field) {
+                found++;
+            }
+        }
+        assertTrue(found >= 2);
+        for (long field = 1; field <= 64; field++) {
+            float value = table.get(field, 0);
+            assertTrue(Float.isNaN(value) || value == field);
+        }
+    }
+
+    @Test
+    void threads() throws InterruptedException {
+        TranspositionTable table = new TranspositionTable(8, false);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean wrong = new AtomicBoolean();
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                for (long field = 1; field <= 100000; field++) {
+                    table.put(field, (int) (field & 7), field);
+                    float value = table.get(field ^ 0x55, 0);
+                    if (!Float.isNaN(value) && value != (float) (field ^ 0x55)) {
+                        wrong.set(true);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertFalse(wrong.get());
+        assertEquals(400000, table.getHits() + table.getMisses());
+    }
+}